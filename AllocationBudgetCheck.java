@@ -0,0 +1,164 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//  Regression check for allocations on the search hot path.
+//  Every solver configuration is run on the same seeded random maps and the bytes allocated per
+//  search node are compared with the budget recorded for it in BUDGETS. The check fails (exit
+//  code 1) when a configuration allocates more than its budget, so a hot path that has been made
+//  allocation free stays that way. Lower a budget whenever a change brings the measured value
+//  down.
+//  The maps are large and hard enough for every configuration to search thousands of nodes; on
+//  the two fixed maps the heuristic searches finish in a few dozen nodes and the per-solve setup
+//  swamps the search. Setup (domains, encodings, the result) is measured on its own by a solve
+//  cut off after its first node, reported per solve and left out of the bytes per node.
+//  Usage: java AllocationBudgetCheck
+public class AllocationBudgetCheck {
+  //  Seeds of the random maps that are measured
+  static final long[] SEEDS = {1, 2, 3, 4, 5, 6, 7, 8};
+  //  3-colouring random maps of this size and average degree is hard, close to the threshold
+  //  between colourable and not colourable
+  static final int STATES = 200;
+  static final double AVERAGE_DEGREE = 4.7;
+  static final int COLORS = 3;
+  //  Each solve is cut off after this many nodes to keep the check fast
+  static final long NODE_LIMIT = 200_000;
+  //  Untimed runs before measuring, so the JIT has compiled the hot path
+  static final int WARMUP_ROUNDS = 3;
+
+  //  Recorded budgets in bytes per search node, about 10% above the measured values. Searches
+  //  over collections get 10 bytes of slack even where they measure 0
+  static final Map<String, Long> BUDGETS = new LinkedHashMap<>();
+
+  static {
+    BUDGETS.put("Backtracking", 0L);
+    BUDGETS.put("Forward Checking", 10L);
+    BUDGETS.put("Forward Checking + Singleton", 10L);
+    BUDGETS.put("Heuristics + Backtracking", 10L);
+    BUDGETS.put("Heuristics + Forward Checking", 10L);
+    BUDGETS.put("Heuristics + Forward Checking + Singleton", 10L);
+    BUDGETS.put("dom/wdeg + Forward Checking", 10L);
+    BUDGETS.put("dom/wdeg + Forward Checking + Singleton", 10L);
+    BUDGETS.put("SAT Encoding + CDCL", 105L);
+    BUDGETS.put("Cycle Cutset Conditioning", 0L);
+    BUDGETS.put("Checkpointed Forward Checking", 0L);
+  }
+
+  //  One solver configuration. Building the solver is not measured, only the solve
+  interface Configuration {
+    Search create(int[][] nodes, String[] colors, String[] states);
+  }
+
+  interface Search {
+    SolveResult solve(int[] totalBackTrackCount, SearchBudget budget);
+  }
+
+  static Map<String, Configuration> configurations() {
+    Map<String, Configuration> configurations = new LinkedHashMap<>();
+    configurations.put(
+        "Backtracking", (n, c, s) -> new StructureWithoutHeuristics(n, c, s)::backtrackColoring);
+    configurations.put(
+        "Forward Checking",
+        (n, c, s) -> new StructureWithoutHeuristics(n, c, s)::forwardCheckingColoring);
+    configurations.put(
+        "Forward Checking + Singleton",
+        (n, c, s) -> new StructureWithoutHeuristics(n, c, s)::forwardCheckingSingletonColoring);
+    configurations.put(
+        "Heuristics + Backtracking",
+        (n, c, s) -> new StructureWithHeuristics(n, c, s)::colorWithBacktracking);
+    configurations.put(
+        "Heuristics + Forward Checking",
+        (n, c, s) -> new StructureWithHeuristics(n, c, s)::colorWithForwardCheck);
+    configurations.put(
+        "Heuristics + Forward Checking + Singleton",
+        (n, c, s) -> new StructureWithHeuristics(n, c, s)::colorWithSingleton);
+    configurations.put(
+        "dom/wdeg + Forward Checking",
+        (n, c, s) -> new StructureWithHeuristics(n, c, s, true)::colorWithForwardCheck);
+    configurations.put(
+        "dom/wdeg + Forward Checking + Singleton",
+        (n, c, s) -> new StructureWithHeuristics(n, c, s, true)::colorWithSingleton);
+    configurations.put("SAT Encoding + CDCL", (n, c, s) -> new SatColoring(n, c, s)::cdclColoring);
+    configurations.put(
+        "Cycle Cutset Conditioning",
+        (n, c, s) -> {
+          // The cutsets of the measured maps are above the default limit, which would measure
+          // the fallback search instead
+          CutsetSolver solver = new CutsetSolver(n, c, s);
+          solver.setMaxCutsetSize(n.length);
+          return solver::cutsetColoring;
+        });
+    configurations.put(
+        "Checkpointed Forward Checking", (n, c, s) -> new CheckpointedSearch(n, c, s, 0)::solve);
+    return configurations;
+  }
+
+  public static void main(String[] args) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    boolean failed = false;
+    System.out.printf(
+        "%-45s %10s %12s %12s %12s%n",
+        "Configuration",
+        "Nodes",
+        "Setup/solve",
+        "Bytes/node",
+        "Budget");
+    for (Map.Entry<String, Configuration> entry : configurations().entrySet()) {
+      for (int round = 0; round < WARMUP_ROUNDS; round++) run(threads, entry.getValue());
+      long[] measured = run(threads, entry.getValue());
+
+      long perSolve = measured[1] / SEEDS.length;
+      long perNode = measured[2] / Math.max(1, measured[0]);
+      long budget = BUDGETS.getOrDefault(entry.getKey(), 0L);
+      boolean exceeded = perNode > budget;
+      failed |= exceeded;
+      System.out.printf(
+          "%-45s %10d %12d %12d %12d%s%n",
+          entry.getKey(),
+          measured[0],
+          perSolve,
+          perNode,
+          budget,
+          exceeded ? "  OVER BUDGET" : "");
+    }
+    if (failed) {
+      System.out.println("Allocation budget exceeded");
+      System.exit(1);
+    }
+  }
+
+  //  Solves every seeded map twice, once cut off after the first node for the setup and once in
+  //  full, each time with a new solver.
+  //  Returns the number of search nodes after the first, the bytes allocated by the setup and the
+  //  bytes allocated by those nodes, all summed over the maps
+  static long[] run(com.sun.management.ThreadMXBean threads, Configuration configuration) {
+    String[] colors = RandomInputGenerator.getColors(COLORS);
+    long[] measured = new long[3];
+    for (long seed : SEEDS) {
+      Map<String, Object> randomInputs =
+          RandomInputGenerator.getRandomGraph(STATES, AVERAGE_DEGREE, seed);
+      int[][] nodes = (int[][]) randomInputs.get("adjacencyMatrix");
+      String[] states = (String[]) randomInputs.get("states");
+
+      long[] setup = solve(threads, configuration.create(nodes, colors, states), 1);
+      long[] full = solve(threads, configuration.create(nodes, colors, states), NODE_LIMIT);
+      measured[0] += full[0] - setup[0];
+      measured[1] += setup[1];
+      measured[2] += Math.max(0, full[1] - setup[1]);
+    }
+    return measured;
+  }
+
+  //  Returns the search nodes of the solve and the bytes it allocated
+  static long[] solve(com.sun.management.ThreadMXBean threads, Search search, long nodeLimit) {
+    long thread = Thread.currentThread().threadId();
+    SearchBudget budget = SearchBudget.ofNodes(nodeLimit);
+    long before = threads.getThreadAllocatedBytes(thread);
+    SolveResult result = search.solve(new int[1], budget);
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+    return new long[] {result.nodes, allocated};
+  }
+}
@@ -0,0 +1,208 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//  Solves many small colouring instances in one call, for throughput on maps like Australia.
+//  Instances are packed into flat int arrays instead of one solver object per map. Each map is
+//  kept as one neighbour bitmask per state and its domains colour-major: cand[c] is the bitmask
+//  of the states that can still take colour c. Assigning colour c to a state is then one
+//  AND-NOT of cand[c] with the state's neighbour mask.
+//  The search is forward checking in state index order. The scalar kernel below solves the
+//  instances in turn. VectorBatchKernel runs one instance per vector lane instead; it needs the
+//  jdk.incubator.vector module (--add-modules jdk.incubator.vector) and is opt-in through
+//  solve(true), since it is only faster where the JIT intrinsifies its gathers and scatters.
+//  main compares both.
+//  Borders are those of ProblemModel.neighbours.
+//  Usage: java --add-modules jdk.incubator.vector BatchedSolver [instances]
+public class BatchedSolver {
+  //  States are bits of an int
+  static final int MAX_STATES = 32;
+  static final boolean VECTOR_AVAILABLE =
+      ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+  int numberOfColors;
+  int size; // Number of instances added
+  int[] numberOfStates; // Per instance
+  int[] neighbourMasks; // neighbourMasks[instance * MAX_STATES + state]
+  int[] solutions; // Colour of each state, same layout as neighbourMasks
+  SolveStatus[] statuses;
+  long nodeCount;
+  long numberOfBacktracks;
+
+  public BatchedSolver(int numberOfColors) {
+    if (numberOfColors > 32) throw new IllegalArgumentException("At most 32 colours");
+    this.numberOfColors = numberOfColors;
+    numberOfStates = new int[16];
+    neighbourMasks = new int[16 * MAX_STATES];
+  }
+
+  //  Adds an instance and returns its index
+  public int add(int[][] nodes) {
+    int n = nodes.length;
+    if (n > MAX_STATES) throw new IllegalArgumentException("At most " + MAX_STATES + " states");
+    if (size == numberOfStates.length) {
+      numberOfStates = Arrays.copyOf(numberOfStates, size * 2);
+      neighbourMasks = Arrays.copyOf(neighbourMasks, size * 2 * MAX_STATES);
+    }
+    numberOfStates[size] = n;
+    int[][] adjacency = ProblemModel.neighbours(nodes);
+    for (int i = 0; i < n; i++) {
+      int mask = 0;
+      for (int j : adjacency[i]) mask |= 1 << j;
+      neighbourMasks[size * MAX_STATES + i] = mask;
+    }
+    return size++;
+  }
+
+  public static void main(String[] args) {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    String[] colors = RandomInputGenerator.getColorsAustralia();
+    int[][][] instances = new int[count][][];
+    String[][] states = new String[count][];
+    for (int i = 0; i < count; i++) {
+      Map<String, Object> randomInputs =
+          RandomInputGenerator.getRandomInputGeneratorForAustralia(i);
+      instances[i] = (int[][]) randomInputs.get("adjacencyMatrix");
+      states[i] = (String[]) randomInputs.get("states");
+    }
+
+    // One solver object per map, as ConstraintSatisfactionSolver does
+    long startTime = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      new StructureWithoutHeuristics(instances[i], colors, states[i])
+          .forwardCheckingColoring(new int[1]);
+    }
+    report("StructureWithoutHeuristics", count, System.nanoTime() - startTime);
+
+    for (boolean vectorised : new boolean[] {false, true}) {
+      if (vectorised && !VECTOR_AVAILABLE) {
+        System.out.println("Vector kernel skipped, run with --add-modules jdk.incubator.vector");
+        continue;
+      }
+      startTime = System.nanoTime();
+      BatchedSolver batch = new BatchedSolver(colors.length);
+      for (int[][] instance : instances) batch.add(instance);
+      batch.solve(vectorised);
+      String name = vectorised ? "Batched, vector" : "Batched, scalar";
+      report(name, count, System.nanoTime() - startTime);
+    }
+  }
+
+  static void report(String name, int count, long nanos) {
+    System.out.printf(
+        "%-28s %10.0f instances/second (%d ms)%n",
+        name, count / (nanos / 1e9), nanos / 1_000_000);
+  }
+
+  //  Solves every instance added so far with the scalar kernel
+  public void solve() {
+    solve(false);
+  }
+
+  //  Solves every instance added so far, with the vector kernel if asked for and available
+  public void solve(boolean vectorised) {
+    solutions = new int[size * MAX_STATES];
+    statuses = new SolveStatus[size];
+    nodeCount = 0;
+    numberOfBacktracks = 0;
+    if (vectorised && VECTOR_AVAILABLE) {
+      VectorBatchKernel.solve(this);
+    } else {
+      int[] cand = new int[numberOfColors];
+      int[] stackCand = new int[MAX_STATES * numberOfColors];
+      int[] stackRemaining = new int[MAX_STATES];
+      int[] stackState = new int[MAX_STATES];
+      int[] stackUnassigned = new int[MAX_STATES];
+      for (int instance = 0; instance < size; instance++) {
+        statuses[instance] =
+            solveScalar(instance, cand, stackCand, stackRemaining, stackState, stackUnassigned);
+      }
+    }
+  }
+
+  //  Forward checking on one instance, with the work arrays passed in so they are reused.
+  //  Depth d assigns the lowest unassigned state; the stacks hold what is needed to return to it
+  SolveStatus solveScalar(
+      int instance,
+      int[] cand,
+      int[] stackCand,
+      int[] stackRemaining,
+      int[] stackState,
+      int[] stackUnassigned) {
+    int k = numberOfColors;
+    int base = instance * MAX_STATES;
+    int unassigned = fullMask(numberOfStates[instance]);
+    if (unassigned == 0) return SolveStatus.SOLVED;
+    Arrays.fill(cand, unassigned);
+
+    int depth = 0;
+    int state = 0;
+    int remaining = fullMask(k);
+    System.arraycopy(cand, 0, stackCand, 0, k);
+    stackState[0] = state;
+    stackUnassigned[0] = unassigned;
+    while (true) {
+      if (remaining == 0) {
+        // Every colour failed, going back to the previous state
+        numberOfBacktracks++;
+        if (--depth < 0) return SolveStatus.UNSAT;
+        remaining = stackRemaining[depth];
+        state = stackState[depth];
+        unassigned = stackUnassigned[depth];
+        System.arraycopy(stackCand, depth * k, cand, 0, k);
+        continue;
+      }
+
+      nodeCount++;
+      int bit = remaining & -remaining;
+      remaining &= ~bit;
+      int color = Integer.numberOfTrailingZeros(bit);
+      int neighbours = neighbourMasks[base + state];
+      int nextUnassigned = unassigned & ~(1 << state);
+      int covered = 0;
+      for (int c = 0; c < k; c++) covered |= c == color ? cand[c] & ~neighbours : cand[c];
+      if ((covered & nextUnassigned) != nextUnassigned) {
+        // A neighbour has no colour left
+        numberOfBacktracks++;
+        continue;
+      }
+
+      cand[color] &= ~neighbours;
+      solutions[base + state] = color;
+      unassigned = nextUnassigned;
+      if (unassigned == 0) return SolveStatus.SOLVED;
+      stackRemaining[depth] = remaining;
+      depth++;
+      state = Integer.numberOfTrailingZeros(unassigned);
+      remaining = 0;
+      for (int c = 0; c < k; c++) remaining |= ((cand[c] >>> state) & 1) << c;
+      System.arraycopy(cand, 0, stackCand, depth * k, k);
+      stackState[depth] = state;
+      stackUnassigned[depth] = unassigned;
+    }
+  }
+
+  static int fullMask(int bits) {
+    return bits == 32 ? -1 : (1 << bits) - 1;
+  }
+
+  public SolveStatus getStatus(int instance) {
+    return statuses[instance];
+  }
+
+  //  Colour index of every state of a solved instance, null if it has no colouring
+  public int[] getColoring(int instance) {
+    if (statuses[instance] != SolveStatus.SOLVED) return null;
+    int base = instance * MAX_STATES;
+    return Arrays.copyOfRange(solutions, base, base + numberOfStates[instance]);
+  }
+
+  //  The colouring of a solved instance as the other solvers return it, else null
+  public Map<String, String> getColoring(int instance, String[] colors, String[] states) {
+    int[] coloring = getColoring(instance);
+    if (coloring == null) return null;
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < coloring.length; i++) map.put(states[i], colors[coloring[i]]);
+    return map;
+  }
+}
@@ -0,0 +1,396 @@
+import java.util.Arrays;
+
+//  Small conflict-driven clause learning SAT solver.
+//  Clauses are given in DIMACS form (variable v as v or -v, variables numbered from 1).
+//  Internally literal 2 * v is the variable v and 2 * v + 1 its negation, counted from 0.
+//  Features: two watched literals, first-UIP learning, VSIDS with phase saving,
+//  Luby restarts and periodic removal of long learnt clauses.
+public final class CdclSolver {
+  static final int RESTART_UNIT = 100; // Conflicts in one Luby restart unit
+  static final double VAR_DECAY = 0.95;
+
+  int numVars;
+  int[][] clauses = new int[16][];
+  boolean[] learnt = new boolean[16];
+  int clauseCount;
+  int learntCount;
+  int maxLearnts;
+  boolean unsat; // An empty clause was derived at level 0
+
+  int[][] watches; // watches[lit] holds the clauses watching lit
+  int[] watchCount;
+
+  byte[] values; // 1 true, -1 false, 0 unassigned, per variable
+  int[] level;
+  int[] reason; // Clause that implied the variable, -1 for decisions
+  int[] trail;
+  int trailSize;
+  int[] trailLimits; // Trail size at the start of every decision level
+  int decisionLevel;
+  int propagateHead;
+
+  double[] activity;
+  double varIncrement = 1;
+  boolean[] polarity; // Saved phase of every variable
+  int[] heap; // Binary max-heap of variables by activity
+  int[] heapIndex; // Position of each variable in the heap, -1 if absent
+  int heapSize;
+
+  boolean[] seen;
+  int[] learntBuffer;
+  int learntSize;
+  int conflicts;
+  byte[] bestValues; // Assignment with the longest conflict-free trail seen
+  int bestTrailSize = -1;
+
+  public CdclSolver(int numVars) {
+    this.numVars = numVars;
+    watches = new int[2 * numVars][4];
+    watchCount = new int[2 * numVars];
+    values = new byte[numVars];
+    level = new int[numVars];
+    reason = new int[numVars];
+    trail = new int[numVars];
+    trailLimits = new int[numVars + 1];
+    activity = new double[numVars];
+    polarity = new boolean[numVars];
+    heap = new int[numVars];
+    heapIndex = new int[numVars];
+    seen = new boolean[numVars];
+    learntBuffer = new int[numVars];
+    bestValues = new byte[numVars];
+    for (int v = 0; v < numVars; v++) {
+      heapIndex[v] = -1;
+      heapInsert(v);
+    }
+  }
+
+  //  Adds a clause in DIMACS form. Must be called before solve
+  public void addClause(int... dimacsLiterals) {
+    if (unsat) return;
+    int[] clause = new int[dimacsLiterals.length];
+    int size = 0;
+    for (int literal : dimacsLiterals) {
+      int lit = literal > 0 ? 2 * (literal - 1) : 2 * (-literal - 1) + 1;
+      if (litValue(lit) == 1) return; // Already satisfied at level 0
+      if (litValue(lit) == -1) continue; // Already false at level 0
+      boolean duplicate = false;
+      for (int i = 0; i < size; i++) {
+        if (clause[i] == (lit ^ 1)) return; // Tautology
+        if (clause[i] == lit) duplicate = true;
+      }
+      if (!duplicate) clause[size++] = lit;
+    }
+    if (size == 0) {
+      unsat = true;
+    } else if (size == 1) {
+      enqueue(clause[0], -1);
+      if (propagate() != -1) unsat = true;
+    } else {
+      addStoredClause(Arrays.copyOf(clause, size), false);
+    }
+  }
+
+  //  Solves the formula within the budget. Conflicts count against the backtrack limit
+  public SolveStatus solve(SearchBudget budget) {
+    budget.start();
+    if (unsat) return SolveStatus.UNSAT;
+    maxLearnts = Math.max(1000, clauseCount / 3);
+    for (int restart = 1; ; restart++) {
+      SolveStatus status = search(luby(restart) * RESTART_UNIT, budget);
+      if (status != null) return status;
+      cancelUntil(0);
+      if (learntCount > maxLearnts) {
+        reduceLearnts();
+        maxLearnts += maxLearnts / 10;
+      }
+    }
+  }
+
+  //  Returns the value of a variable in the model, variables numbered from 1 as in DIMACS
+  public boolean modelValue(int dimacsVariable) {
+    return values[dimacsVariable - 1] == 1;
+  }
+
+  //  Returns the value of a variable in the best partial assignment: 1, -1 or 0 if unassigned
+  public int partialValue(int dimacsVariable) {
+    return bestValues[dimacsVariable - 1];
+  }
+
+  public int getConflicts() {
+    return conflicts;
+  }
+
+  //  Searches until a model is found, the formula is refuted, the budget runs out
+  //  or conflictLimit conflicts happened (null, restart)
+  SolveStatus search(int conflictLimit, SearchBudget budget) {
+    int restartConflicts = 0;
+    while (true) {
+      int conflict = propagate();
+      if (conflict != -1) {
+        conflicts++;
+        restartConflicts++;
+        if (decisionLevel == 0) return SolveStatus.UNSAT;
+        int backjumpLevel = analyze(conflict);
+        cancelUntil(backjumpLevel);
+        learn();
+        varIncrement /= VAR_DECAY;
+      } else {
+        if (trailSize > bestTrailSize) {
+          bestTrailSize = trailSize;
+          System.arraycopy(values, 0, bestValues, 0, numVars);
+        }
+        if (budget.tick(conflicts)) return SolveStatus.TIMEOUT;
+        if (restartConflicts >= conflictLimit) return null;
+        int variable = pickBranchVariable();
+        if (variable == -1) return SolveStatus.SOLVED;
+        trailLimits[decisionLevel++] = trailSize;
+        enqueue(2 * variable + (polarity[variable] ? 0 : 1), -1);
+      }
+    }
+  }
+
+  //  Propagates all enqueued literals. Returns the conflicting clause or -1
+  int propagate() {
+    while (propagateHead < trailSize) {
+      int falseLit = trail[propagateHead++] ^ 1;
+      int[] watchList = watches[falseLit];
+      int count = watchCount[falseLit];
+      int kept = 0;
+      int i = 0;
+      while (i < count) {
+        int clauseIndex = watchList[i++];
+        int[] clause = clauses[clauseIndex];
+        if (clause == null) continue; // Removed learnt clause
+        if (clause[0] == falseLit) {
+          clause[0] = clause[1];
+          clause[1] = falseLit;
+        }
+        if (litValue(clause[0]) == 1) {
+          watchList[kept++] = clauseIndex;
+          continue;
+        }
+        boolean moved = false;
+        for (int k = 2; k < clause.length; k++) {
+          if (litValue(clause[k]) != -1) {
+            clause[1] = clause[k];
+            clause[k] = falseLit;
+            watch(clause[1], clauseIndex);
+            moved = true;
+            break;
+          }
+        }
+        if (moved) continue;
+        watchList[kept++] = clauseIndex;
+        if (litValue(clause[0]) == -1) {
+          while (i < count) watchList[kept++] = watchList[i++];
+          watchCount[falseLit] = kept;
+          propagateHead = trailSize;
+          return clauseIndex;
+        }
+        enqueue(clause[0], clauseIndex);
+      }
+      watchCount[falseLit] = kept;
+    }
+    return -1;
+  }
+
+  //  First-UIP conflict analysis. Leaves the learnt clause in learntBuffer[0..learntSize)
+  //  with the asserting literal first, and returns the level to jump back to
+  int analyze(int conflict) {
+    int pathCount = 0;
+    int lit = -1;
+    int index = trailSize - 1;
+    learntSize = 1;
+    int[] clause = clauses[conflict];
+    do {
+      for (int j = lit == -1 ? 0 : 1; j < clause.length; j++) {
+        int q = clause[j];
+        int variable = q >>> 1;
+        if (!seen[variable] && level[variable] > 0) {
+          bumpActivity(variable);
+          seen[variable] = true;
+          if (level[variable] >= decisionLevel) pathCount++;
+          else learntBuffer[learntSize++] = q;
+        }
+      }
+      while (!seen[trail[index] >>> 1]) index--;
+      lit = trail[index--];
+      seen[lit >>> 1] = false;
+      pathCount--;
+      if (pathCount > 0) clause = clauses[reason[lit >>> 1]];
+    } while (pathCount > 0);
+    learntBuffer[0] = lit ^ 1;
+
+    int backjumpLevel = 0;
+    for (int j = 1; j < learntSize; j++) {
+      int variable = learntBuffer[j] >>> 1;
+      seen[variable] = false;
+      if (level[variable] > backjumpLevel) {
+        backjumpLevel = level[variable];
+        int swap = learntBuffer[1];
+        learntBuffer[1] = learntBuffer[j];
+        learntBuffer[j] = swap;
+      }
+    }
+    return backjumpLevel;
+  }
+
+  //  Adds the clause from analyze and asserts its first literal
+  void learn() {
+    if (learntSize == 1) {
+      enqueue(learntBuffer[0], -1);
+    } else {
+      int clauseIndex = addStoredClause(Arrays.copyOf(learntBuffer, learntSize), true);
+      enqueue(learntBuffer[0], clauseIndex);
+    }
+  }
+
+  int addStoredClause(int[] clause, boolean isLearnt) {
+    if (clauseCount == clauses.length) {
+      clauses = Arrays.copyOf(clauses, clauseCount * 2);
+      learnt = Arrays.copyOf(learnt, clauseCount * 2);
+    }
+    clauses[clauseCount] = clause;
+    learnt[clauseCount] = isLearnt;
+    if (isLearnt) learntCount++;
+    watch(clause[0], clauseCount);
+    watch(clause[1], clauseCount);
+    return clauseCount++;
+  }
+
+  void watch(int lit, int clauseIndex) {
+    if (watchCount[lit] == watches[lit].length) {
+      watches[lit] = Arrays.copyOf(watches[lit], watchCount[lit] * 2);
+    }
+    watches[lit][watchCount[lit]++] = clauseIndex;
+  }
+
+  //  Drops the longer half of the learnt clauses that are not the reason of an assignment.
+  //  Watch lists skip removed clauses lazily
+  void reduceLearnts() {
+    int[] sizes = new int[learntCount];
+    int n = 0;
+    for (int c = 0; c < clauseCount; c++) {
+      if (learnt[c] && clauses[c] != null) sizes[n++] = clauses[c].length;
+    }
+    Arrays.sort(sizes, 0, n);
+    int limit = sizes[n / 2];
+    for (int c = 0; c < clauseCount; c++) {
+      int[] clause = clauses[c];
+      if (!learnt[c] || clause == null || clause.length <= Math.max(limit, 2)) continue;
+      int variable = clause[0] >>> 1;
+      if (values[variable] != 0 && reason[variable] == c) continue;
+      clauses[c] = null;
+      learntCount--;
+    }
+  }
+
+  void enqueue(int lit, int clauseIndex) {
+    int variable = lit >>> 1;
+    values[variable] = (byte) ((lit & 1) == 0 ? 1 : -1);
+    level[variable] = decisionLevel;
+    reason[variable] = clauseIndex;
+    trail[trailSize++] = lit;
+  }
+
+  void cancelUntil(int targetLevel) {
+    if (decisionLevel <= targetLevel) return;
+    for (int i = trailSize - 1; i >= trailLimits[targetLevel]; i--) {
+      int variable = trail[i] >>> 1;
+      polarity[variable] = values[variable] == 1;
+      values[variable] = 0;
+      reason[variable] = -1;
+      if (heapIndex[variable] == -1) heapInsert(variable);
+    }
+    trailSize = trailLimits[targetLevel];
+    propagateHead = trailSize;
+    decisionLevel = targetLevel;
+  }
+
+  int litValue(int lit) {
+    int value = values[lit >>> 1];
+    return (lit & 1) == 0 ? value : -value;
+  }
+
+  //  Returns the unassigned variable with the highest activity, -1 if all are assigned
+  int pickBranchVariable() {
+    while (heapSize > 0) {
+      int variable = heapRemoveMax();
+      if (values[variable] == 0) return variable;
+    }
+    return -1;
+  }
+
+  void bumpActivity(int variable) {
+    activity[variable] += varIncrement;
+    if (activity[variable] > 1e100) {
+      for (int v = 0; v < numVars; v++) activity[v] *= 1e-100;
+      varIncrement *= 1e-100;
+    }
+    if (heapIndex[variable] != -1) siftUp(heapIndex[variable]);
+  }
+
+  void heapInsert(int variable) {
+    heap[heapSize] = variable;
+    heapIndex[variable] = heapSize;
+    siftUp(heapSize++);
+  }
+
+  int heapRemoveMax() {
+    int top = heap[0];
+    heapIndex[top] = -1;
+    heapSize--;
+    if (heapSize > 0) {
+      heap[0] = heap[heapSize];
+      heapIndex[heap[0]] = 0;
+      siftDown(0);
+    }
+    return top;
+  }
+
+  void siftUp(int position) {
+    int variable = heap[position];
+    while (position > 0) {
+      int parent = (position - 1) >>> 1;
+      if (activity[heap[parent]] >= activity[variable]) break;
+      heap[position] = heap[parent];
+      heapIndex[heap[position]] = position;
+      position = parent;
+    }
+    heap[position] = variable;
+    heapIndex[variable] = position;
+  }
+
+  void siftDown(int position) {
+    int variable = heap[position];
+    while (true) {
+      int child = 2 * position + 1;
+      if (child >= heapSize) break;
+      if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) child++;
+      if (activity[heap[child]] <= activity[variable]) break;
+      heap[position] = heap[child];
+      heapIndex[heap[position]] = position;
+      position = child;
+    }
+    heap[position] = variable;
+    heapIndex[variable] = position;
+  }
+
+  //  i-th element (from 1) of the Luby sequence 1 1 2 1 1 2 4 ...
+  static int luby(int i) {
+    int x = i - 1;
+    int size = 1;
+    int power = 0;
+    while (size < x + 1) {
+      size = 2 * size + 1;
+      power++;
+    }
+    while (size - 1 != x) {
+      size = (size - 1) >>> 1;
+      power--;
+      x = x % size;
+    }
+    return 1 << power;
+  }
+}
@@ -0,0 +1,363 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+//  Backtracking + FC in static state order that can be interrupted and resumed. The recursion of
+//  StructureWithoutHeuristics is replaced by an explicit decision stack and a trail of domain
+//  removals. A snapshot of both is written to a checkpoint file at regular intervals.
+//  This is a standalone solver, not one of the menu's methods. It makes the same decisions as
+//  forwardCheckingColoring of StructureWithoutHeuristics, but has no side constraints.
+//
+//  Checkpoint format (version 1, big endian):
+//    int magic, int version, int states, int colours, long graph hash, long input seed,
+//    long nodes, int backtracks, int depth, int[depth + 1] value indices,
+//    int trail size, int[trail size] trail, int[depth] trail marks
+//  Colours and domains follow from the value indices and the trail, so they are not stored.
+//  The search itself is deterministic; the only randomness is the input permutation, so the
+//  seed of that permutation is stored to let a resume rebuild the same map.
+//
+//  Usage: java CheckpointedSearch <1 - Australia | 2 - United States> <checkpoint file>
+//  Resumes from the file if it exists, else starts a new search.
+public class CheckpointedSearch {
+  static final int MAGIC = 0x43535043; // "CSPC"
+  static final int VERSION = 1;
+  static final long DEFAULT_INTERVAL_MILLIS = 5000;
+  //  The clock is only read once every CHECK_INTERVAL nodes
+  static final int CHECK_INTERVAL = 4096;
+
+  int[][] nodes;
+  String[] colors;
+  String[] states;
+  long seed;
+  int[][] adjacency; // Neighbour lists, from ProblemModel.neighbours
+
+  // Search state
+  int depth; // The state being coloured, states are coloured in index order
+  int[] colorMap;
+  int[] valueIndex; // Next colour to try at each depth
+  int[] domains; // Bitset of the colours still possible for each state
+  int[] trail; // Removed (state, colour) pairs packed as state * colours + colour
+  int trailSize;
+  int[] trailMarks; // Trail size before each decision
+  long nodeCount;
+  int numberOfBacktracks;
+
+  // Checkpointing
+  Path checkpointPath;
+  long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+  long nextCheckpoint;
+  int countdown = CHECK_INTERVAL;
+  ExecutorService writer;
+  Future<?> pendingWrite;
+  IOException checkpointFailure; // First checkpoint that could not be written
+
+  public CheckpointedSearch(int[][] nodes, String[] colors, String[] states, long seed) {
+    this.nodes = nodes;
+    this.colors = colors;
+    this.states = states;
+    this.seed = seed;
+    int n = nodes.length;
+    this.adjacency = ProblemModel.neighbours(nodes);
+    colorMap = new int[n];
+    valueIndex = new int[n + 1];
+    domains = new int[n];
+    trail = new int[n * colors.length];
+    trailMarks = new int[n];
+    Arrays.fill(colorMap, -1);
+    Arrays.fill(domains, (1 << colors.length) - 1);
+  }
+
+  //  Writes a checkpoint to the path every intervalMillis while solving
+  public void setCheckpoint(Path checkpointPath, long intervalMillis) {
+    this.checkpointPath = checkpointPath;
+    this.intervalMillis = intervalMillis;
+  }
+
+  public static void main(String[] args) throws IOException {
+    boolean australia = args[0].equals("1");
+    Path path = Path.of(args[1]);
+    boolean resuming = Files.exists(path);
+    long seed = resuming ? readSeed(path) : System.nanoTime();
+
+    Map<String, Object> randomInputs =
+        australia
+            ? RandomInputGenerator.getRandomInputGeneratorForAustralia(seed)
+            : RandomInputGenerator.getRandomInputGeneratorForUnitedStates(seed);
+    int[][] stateGraphStructure = (int[][]) randomInputs.get("adjacencyMatrix");
+    String[] states = (String[]) randomInputs.get("states");
+    String[] colors =
+        australia ? RandomInputGenerator.getColorsAustralia() : RandomInputGenerator.getColorsUS();
+
+    CheckpointedSearch search =
+        resuming
+            ? resume(path, stateGraphStructure, colors, states)
+            : new CheckpointedSearch(stateGraphStructure, colors, states, seed);
+    search.setCheckpoint(path, DEFAULT_INTERVAL_MILLIS);
+    if (resuming) System.out.println("Resuming at depth " + search.depth);
+
+    int[] numberOfBacktracks = new int[1];
+    long startTime = System.currentTimeMillis();
+    SolveResult result;
+    try {
+      result = search.solve(numberOfBacktracks, SearchBudget.unlimited());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    System.out.println(result.status + " " + result.coloring);
+    System.out.println("Duration: " + (System.currentTimeMillis() - startTime) + " milliseconds");
+    System.out.println("Number of Backtracks: " + numberOfBacktracks[0]);
+    if (result.status != SolveStatus.TIMEOUT) Files.deleteIfExists(path);
+  }
+
+  //  Runs (or continues) the search within the given budget.
+  //  Throws UncheckedIOException if a checkpoint could not be written; the search stops at the
+  //  first failed write, and the checkpoint file keeps the last state that was written
+  public SolveResult solve(int[] totalBackTrackCount, SearchBudget budget) {
+    budget.start();
+    if (checkpointPath != null) {
+      writer =
+          Executors.newSingleThreadExecutor(
+              r -> {
+                Thread thread = new Thread(r, "checkpoint-writer");
+                thread.setDaemon(true);
+                return thread;
+              });
+      nextCheckpoint = System.currentTimeMillis() + intervalMillis;
+    }
+
+    SolveStatus status;
+    try {
+      status = search(budget);
+      // The final state is always written when the search stops early
+      if (status == SolveStatus.TIMEOUT && writer != null && checkpointFailure == null) {
+        awaitPendingWrite();
+        writeCheckpointAsync();
+        awaitPendingWrite();
+      }
+    } finally {
+      if (writer != null) {
+        writer.shutdown();
+        try {
+          writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    if (checkpointFailure != null) {
+      throw new UncheckedIOException(
+          "Could not write checkpoint " + checkpointPath, checkpointFailure);
+    }
+
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < states.length; i++) {
+      if (colorMap[i] != -1) map.put(states[i], colors[colorMap[i]]);
+    }
+    budget.nodes = nodeCount;
+    totalBackTrackCount[0] = numberOfBacktracks;
+    return new SolveResult(status, map, nodeCount, numberOfBacktracks);
+  }
+
+  SolveStatus search(SearchBudget budget) {
+    int n = nodes.length;
+    while (true) {
+      if (depth == n) return SolveStatus.SOLVED;
+      if (budget.tick(numberOfBacktracks)) return SolveStatus.TIMEOUT;
+      nodeCount++;
+      if (writer != null && --countdown == 0) {
+        countdown = CHECK_INTERVAL;
+        // A failed write stops the search, solve reports it
+        if (pendingWrite != null && pendingWrite.isDone()) awaitPendingWrite();
+        if (checkpointFailure != null) return SolveStatus.TIMEOUT;
+        if (System.currentTimeMillis() >= nextCheckpoint) {
+          writeCheckpointAsync();
+          nextCheckpoint = System.currentTimeMillis() + intervalMillis;
+        }
+      }
+
+      int remaining = domains[depth] >>> valueIndex[depth] << valueIndex[depth];
+      if (remaining == 0) {
+        // Every colour failed, going back to the previous state
+        if (depth == 0) return SolveStatus.UNSAT;
+        depth--;
+        undo(trailMarks[depth]);
+        colorMap[depth] = -1;
+        numberOfBacktracks++;
+        continue;
+      }
+
+      int color = Integer.numberOfTrailingZeros(remaining);
+      valueIndex[depth] = color + 1;
+      trailMarks[depth] = trailSize;
+      colorMap[depth] = color;
+      if (forwardCheck(depth, color)) {
+        depth++;
+        valueIndex[depth] = 0;
+      } else {
+        undo(trailMarks[depth]);
+        colorMap[depth] = -1;
+        numberOfBacktracks++;
+      }
+    }
+  }
+
+  //  Removes the colour from the unassigned neighbours, recording each removal on the trail.
+  //  Returns false if a domain is wiped out
+  boolean forwardCheck(int state, int color) {
+    int bit = 1 << color;
+    for (int neighbour : adjacency[state]) {
+      if (colorMap[neighbour] == -1 && (domains[neighbour] & bit) != 0) {
+        domains[neighbour] &= ~bit;
+        trail[trailSize++] = neighbour * colors.length + color;
+        if (domains[neighbour] == 0) return false;
+      }
+    }
+    return true;
+  }
+
+  //  Puts back every removal made after the trail mark
+  void undo(int mark) {
+    while (trailSize > mark) {
+      int entry = trail[--trailSize];
+      domains[entry / colors.length] |= 1 << (entry % colors.length);
+    }
+  }
+
+  //  Snapshots the search state and writes it on the writer thread.
+  //  Skipped if the previous checkpoint is still being written
+  void writeCheckpointAsync() {
+    if (pendingWrite != null && !pendingWrite.isDone()) return;
+    ByteBuffer buffer = ByteBuffer.allocate(64 + 4 * (2 * depth + 1 + trailSize));
+    buffer.putInt(MAGIC).putInt(VERSION);
+    buffer.putInt(nodes.length).putInt(colors.length);
+    buffer.putLong(graphHash(nodes)).putLong(seed);
+    buffer.putLong(nodeCount).putInt(numberOfBacktracks);
+    buffer.putInt(depth);
+    for (int d = 0; d <= depth && d < valueIndex.length; d++) buffer.putInt(valueIndex[d]);
+    buffer.putInt(trailSize);
+    for (int i = 0; i < trailSize; i++) buffer.putInt(trail[i]);
+    for (int d = 0; d < depth; d++) buffer.putInt(trailMarks[d]);
+    buffer.flip();
+    pendingWrite =
+        writer.submit(
+            () -> {
+              write(buffer);
+              return null;
+            });
+  }
+
+  //  Waits for the checkpoint being written, and records its failure
+  void awaitPendingWrite() {
+    if (pendingWrite == null) return;
+    try {
+      pendingWrite.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      if (checkpointFailure == null) {
+        checkpointFailure =
+            e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+      }
+    }
+    pendingWrite = null;
+  }
+
+  //  Writes the buffer to a temporary file and moves it over the checkpoint,
+  //  so an interrupted write never destroys the previous checkpoint
+  void write(ByteBuffer buffer) throws IOException {
+    Path temporary = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) channel.write(buffer);
+      channel.force(false);
+    }
+    Files.move(
+        temporary,
+        checkpointPath,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  static ByteBuffer readFile(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+      while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+      buffer.flip();
+      if (buffer.remaining() < 32 || buffer.getInt() != MAGIC) {
+        throw new IOException("Not a checkpoint file: " + path);
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported checkpoint version " + version);
+      }
+      return buffer;
+    }
+  }
+
+  //  Returns the seed of the input permutation stored in a checkpoint
+  public static long readSeed(Path path) throws IOException {
+    ByteBuffer buffer = readFile(path);
+    buffer.getInt();
+    buffer.getInt();
+    buffer.getLong();
+    return buffer.getLong();
+  }
+
+  //  Restores a search from a checkpoint. The map must be the one the checkpoint was taken on
+  public static CheckpointedSearch resume(
+      Path path, int[][] nodes, String[] colors, String[] states) throws IOException {
+    ByteBuffer buffer = readFile(path);
+    if (buffer.getInt() != nodes.length
+        || buffer.getInt() != colors.length
+        || buffer.getLong() != graphHash(nodes)) {
+      throw new IOException("Checkpoint was taken on a different map");
+    }
+    CheckpointedSearch search = new CheckpointedSearch(nodes, colors, states, buffer.getLong());
+    search.nodeCount = buffer.getLong();
+    search.numberOfBacktracks = buffer.getInt();
+    search.depth = buffer.getInt();
+    for (int d = 0; d <= search.depth && d < search.valueIndex.length; d++) {
+      search.valueIndex[d] = buffer.getInt();
+    }
+    search.trailSize = buffer.getInt();
+    for (int i = 0; i < search.trailSize; i++) {
+      int entry = buffer.getInt();
+      search.trail[i] = entry;
+      search.domains[entry / colors.length] &= ~(1 << (entry % colors.length));
+    }
+    for (int d = 0; d < search.depth; d++) {
+      search.trailMarks[d] = buffer.getInt();
+      search.colorMap[d] = search.valueIndex[d] - 1;
+    }
+    return search;
+  }
+
+  //  FNV-1a hash of the adjacency matrix
+  static long graphHash(int[][] nodes) {
+    long hash = 0xcbf29ce484222325L;
+    for (int[] row : nodes) {
+      for (int cell : row) {
+        hash ^= cell;
+        hash *= 0x100000001b3L;
+      }
+    }
+    return hash;
+  }
+}
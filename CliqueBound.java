@@ -0,0 +1,139 @@
+import java.util.Arrays;
+
+//  Lower bound on the number of colours needed, taken from a large clique of the map.
+//  Every state in a clique borders all the others, so a clique larger than the number of
+//  colours proves that no colouring exists. Otherwise the clique's colours can be fixed up front,
+//  which removes the symmetric choices from the search.
+//  Adjacency is kept as long[] bitsets so that candidate sets are intersected 64 states at a time.
+public class CliqueBound {
+  //  Default number of branch-and-bound nodes spent improving the greedy clique
+  static final long DEFAULT_NODE_LIMIT = 100_000;
+
+  int n;
+  int words;
+  long[][] neighbours; // neighbours[v] is the bitset of ProblemModel.neighbours(nodes)[v]
+  int[] bestClique;
+  int bestSize;
+  long nodeCount;
+  long nodeLimit;
+
+  public CliqueBound(int[][] nodes) {
+    this.n = nodes.length;
+    this.words = (n + 63) >>> 6;
+    this.neighbours = new long[n][words];
+    int[][] adjacency = ProblemModel.neighbours(nodes);
+    for (int i = 0; i < n; i++) {
+      for (int j : adjacency[i]) neighbours[i][j >>> 6] |= 1L << j;
+    }
+  }
+
+  //  Returns a large clique, found greedily and then improved by branch and bound
+  //  until nodeLimit search nodes have been spent
+  public int[] findClique(long nodeLimit) {
+    greedyClique();
+    this.nodeLimit = nodeLimit;
+    this.nodeCount = 0;
+    long[] candidates = new long[words];
+    for (int v = 0; v < n; v++) candidates[v >>> 6] |= 1L << v;
+    expand(new int[n], 0, candidates);
+    return Arrays.copyOf(bestClique, bestSize);
+  }
+
+  //  Returns the colour each state is fixed to, -1 for states outside the clique
+  public int[] getFixedColors(int[] clique) {
+    int[] fixedColors = new int[n];
+    Arrays.fill(fixedColors, -1);
+    for (int i = 0; i < clique.length; i++) fixedColors[clique[i]] = i;
+    return fixedColors;
+  }
+
+  //  Builds a clique by repeatedly taking the candidate with the most candidate neighbours
+  void greedyClique() {
+    long[] candidates = new long[words];
+    for (int v = 0; v < n; v++) candidates[v >>> 6] |= 1L << v;
+    bestClique = new int[n];
+    bestSize = 0;
+    while (!isEmpty(candidates)) {
+      int best = -1;
+      int bestCount = -1;
+      for (int w = 0; w < words; w++) {
+        long bits = candidates[w];
+        while (bits != 0) {
+          int v = (w << 6) + Long.numberOfTrailingZeros(bits);
+          bits &= bits - 1;
+          int count = intersectionSize(candidates, neighbours[v]);
+          if (count > bestCount) {
+            bestCount = count;
+            best = v;
+          }
+        }
+      }
+      bestClique[bestSize++] = best;
+      for (int w = 0; w < words; w++) candidates[w] &= neighbours[best][w];
+    }
+  }
+
+  //  Branch and bound over the candidate set. Candidates are greedily coloured and the colour
+  //  count bounds how much the current clique can still grow (Tomita's MCQ)
+  void expand(int[] clique, int size, long[] candidates) {
+    if (++nodeCount > nodeLimit) return;
+    int count = intersectionSize(candidates, candidates);
+    int[] order = new int[count];
+    int[] bound = new int[count];
+    colourSort(candidates, order, bound);
+
+    for (int i = count - 1; i >= 0; i--) {
+      if (size + bound[i] <= bestSize || nodeCount > nodeLimit) return;
+      int v = order[i];
+      clique[size] = v;
+      long[] next = new long[words];
+      for (int w = 0; w < words; w++) next[w] = candidates[w] & neighbours[v][w];
+      if (isEmpty(next)) {
+        if (size + 1 > bestSize) {
+          bestSize = size + 1;
+          System.arraycopy(clique, 0, bestClique, 0, bestSize);
+        }
+      } else {
+        expand(clique, size + 1, next);
+      }
+      candidates[v >>> 6] &= ~(1L << v);
+    }
+  }
+
+  //  Greedy colouring of the candidates into independent sets.
+  //  order lists the candidates by colour, bound holds the colour number of each entry
+  void colourSort(long[] candidates, int[] order, int[] bound) {
+    long[] uncoloured = candidates.clone();
+    long[] available = new long[words];
+    int colour = 0;
+    int k = 0;
+    while (!isEmpty(uncoloured)) {
+      colour++;
+      System.arraycopy(uncoloured, 0, available, 0, words);
+      for (int w = 0; w < words; w++) {
+        while (available[w] != 0) {
+          int v = (w << 6) + Long.numberOfTrailingZeros(available[w]);
+          available[w] &= available[w] - 1;
+          for (int x = w; x < words; x++) available[x] &= ~neighbours[v][x];
+          uncoloured[w] &= ~(1L << v);
+          order[k] = v;
+          bound[k] = colour;
+          k++;
+        }
+      }
+    }
+  }
+
+  static int intersectionSize(long[] a, long[] b) {
+    int count = 0;
+    for (int w = 0; w < a.length; w++) count += Long.bitCount(a[w] & b[w]);
+    return count;
+  }
+
+  static boolean isEmpty(long[] bits) {
+    for (long word : bits) {
+      if (word != 0) return false;
+    }
+    return true;
+  }
+}
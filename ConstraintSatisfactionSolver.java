@@ -1,5 +1,6 @@
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -13,18 +14,41 @@ public class ConstraintSatisfactionSolver {
     int country = sc.nextInt();
     sc.nextLine(); // Consume the newline
 
-    System.out.println("With heuristic?:\n1 - No\n2 - Yes");
+    System.out.println(
+        "With heuristic?:\n1 - No\n2 - Yes\n3 - Yes, with adaptive dom/wdeg ordering");
     int heuristic = sc.nextInt();
     sc.nextLine(); // Consume the newline
 
+    System.out.println(
+        "Static ordering?:\n1 - No (random order)\n2 - Degeneracy\n3 - Maximum cardinality search"
+            + "\n4 - Cuthill-McKee");
+    int ordering = sc.nextInt();
+    sc.nextLine(); // Consume the newline
+
+    System.out.println("With k-core peeling?:\n1 - No\n2 - Yes");
+    int peeling = sc.nextInt();
+    sc.nextLine(); // Consume the newline
+
+    System.out.println("With clique bound?:\n1 - No\n2 - Yes");
+    int clique = sc.nextInt();
+    sc.nextLine(); // Consume the newline
+
+    System.out.println("Time limit per run in seconds (0 - No limit):");
+    long timeLimit = sc.nextLong();
+    sc.nextLine(); // Consume the newline
+
     String mapName = (country == 1) ? "Australia" : "United States of America";
-    boolean heuristicsUsed = (heuristic == 2);
+    boolean heuristicsUsed = (heuristic >= 2);
+    boolean peelingUsed = (peeling == 2);
+    boolean cliqueUsed = (clique == 2);
 
     String[] methods =
         new String[] {
           "Depth First Search Only                                                       ",
           "Depth First Search + Forward Checking                                         ",
-          "Depth First Search + Forward Checking + Propagation Through Singleton Domain  "
+          "Depth First Search + Forward Checking + Propagation Through Singleton Domain  ",
+          "SAT Encoding + CDCL (Clause Learning)                                         ",
+          "Cycle Cutset Conditioning + Tree Solving                                      "
         };
     List<ExecutionResult> results = new ArrayList<>();
 
@@ -35,7 +59,7 @@ public class ConstraintSatisfactionSolver {
       int[][] stateGraphStructure;
       String[] colors;
       String[] states;
-      Map<String, String> result;
+      SolveResult result;
       long startTime, endTime, duration;
 
       Map<String, Object> randomInputs;
@@ -51,47 +75,57 @@ public class ConstraintSatisfactionSolver {
         colors = RandomInputGenerator.getColorsUS();
       }
 
-      // Running all three algorithms
-      for (int j = 0; j < 3; j++) {
+      // The states are relabelled once; colourings are keyed by state name, so they come out
+      // the same way
+      if (ordering >= 2) {
+        StaticOrdering staticOrdering =
+            new StaticOrdering(stateGraphStructure, StaticOrdering.Strategy.values()[ordering - 2]);
+        stateGraphStructure = staticOrdering.getOrderedStructure();
+        states = staticOrdering.getOrderedStates(states);
+      }
+
+      // Running all the algorithms
+      for (int j = 0; j < methods.length; j++) {
         String algorithm = methods[j];
+        SearchBudget budget = SearchBudget.ofMillis(timeLimit * 1000);
 
-        if (!heuristicsUsed) {
-          // Without heuristics
-          StructureWithoutHeuristics graph = new StructureWithoutHeuristics(stateGraphStructure, colors, states);
+        startTime = System.currentTimeMillis();
 
-          startTime = System.currentTimeMillis();
+        // Only the k-core is searched, the peeled states are coloured afterwards
+        KCorePeeling kCore = null;
+        int[][] searchStructure = stateGraphStructure;
+        String[] searchStates = states;
+        if (peelingUsed) {
+          kCore = new KCorePeeling(stateGraphStructure, colors.length);
+          searchStructure = kCore.getCoreStructure();
+          searchStates = kCore.getCoreStates(states);
+        }
 
-          switch (j) {
-            case 0:
-              result = graph.backtrackColoring(numberOfBacktracks);
-              break;
-            case 1:
-              result = graph.forwardCheckingColoring(numberOfBacktracks);
-              break;
-            default:
-              result = graph.forwardCheckingSingletonColoring(numberOfBacktracks);
-              break;
-          }
+        // A clique larger than the number of colours proves that there is no colouring,
+        // otherwise the states of the clique get fixed colours
+        int[] fixedColors = null;
+        if (cliqueUsed) {
+          CliqueBound bound = new CliqueBound(searchStructure);
+          int[] largeClique = bound.findClique(CliqueBound.DEFAULT_NODE_LIMIT);
+          if (largeClique.length <= colors.length) fixedColors = bound.getFixedColors(largeClique);
+        }
 
+        if (cliqueUsed && fixedColors == null) {
+          numberOfBacktracks[0] = 0;
+          result = new SolveResult(SolveStatus.UNSAT, new HashMap<>(), 0, 0);
         } else {
-          // With heuristics
-          StructureWithHeuristics graph =
-              new StructureWithHeuristics(stateGraphStructure, colors, states);
-
-          startTime = System.currentTimeMillis();
-
-          switch (j) {
-            case 0:
-              result = graph.colorWithBacktracking(numberOfBacktracks);
-              break;
-            case 1:
-              result = graph.colorWithForwardCheck(numberOfBacktracks);
-              break;
-            default:
-              result = graph.colorWithSingleton(numberOfBacktracks);
-              break;
-          }
+          result =
+              runAlgorithm(
+                  j,
+                  heuristic,
+                  searchStructure,
+                  colors,
+                  searchStates,
+                  fixedColors,
+                  numberOfBacktracks,
+                  budget);
         }
+        if (kCore != null) result = kCore.extend(result, colors, states);
         endTime = System.currentTimeMillis();
         duration = (endTime - startTime);
 
@@ -102,7 +136,7 @@ public class ConstraintSatisfactionSolver {
 
         // Printing the coloring result for each run
         System.out.println("Run " + (i + 1) + " - " + algorithm + ":");
-        System.out.println(result);
+        System.out.println(result.status + " " + result.coloring);
         System.out.println("Duration: " + duration + " milliseconds");
         System.out.println("Number of Backtracks: " + numberOfBacktracks[0]);
         System.out.println(
@@ -113,6 +147,84 @@ public class ConstraintSatisfactionSolver {
     printExecutionResultsTable(results, mapName, heuristicsUsed);
   }
 
+  //  Runs one of the algorithms of the methods menu (0 - DFS, 1 - DFS + FC,
+  //  2 - DFS + FC + Singleton, 3 - SAT, 4 - Cutset) with the heuristic choice of the menu
+  //  (1 - No, 2 - Yes, 3 - Yes with adaptive ordering). fixedColors are the colours of a clique
+  //  from CliqueBound.getFixedColors, or null
+  public static SolveResult runAlgorithm(
+      int method,
+      int heuristic,
+      int[][] stateGraphStructure,
+      String[] colors,
+      String[] states,
+      int[] fixedColors,
+      int[] numberOfBacktracks,
+      SearchBudget budget) {
+    return runAlgorithm(
+        method,
+        heuristic,
+        new ProblemModel(stateGraphStructure, colors, states),
+        fixedColors,
+        numberOfBacktracks,
+        budget);
+  }
+
+  //  Same as above on a shared model. The searches run on a search context taken from the
+  //  model's pool, so many solves of one map can run at the same time
+  public static SolveResult runAlgorithm(
+      int method,
+      int heuristic,
+      ProblemModel model,
+      int[] fixedColors,
+      int[] numberOfBacktracks,
+      SearchBudget budget) {
+    if (method == 4) {
+      // Structural solver, the same with or without heuristics
+      CutsetSolver graph = new CutsetSolver(model);
+      if (fixedColors != null) graph.fixColors(fixedColors);
+      return graph.cutsetColoring(numberOfBacktracks, budget);
+    } else if (method == 3) {
+      // SAT backend, the same with or without heuristics
+      SatColoring graph = new SatColoring(model);
+      if (fixedColors != null) graph.fixColors(fixedColors);
+      return graph.cdclColoring(numberOfBacktracks, budget);
+    } else if (heuristic == 1) {
+      // Without heuristics
+      StructureWithoutHeuristics graph = model.acquireWithoutHeuristics();
+      try {
+        if (fixedColors != null) graph.fixCliqueColors(fixedColors);
+
+        switch (method) {
+          case 0:
+            return graph.backtrackColoring(numberOfBacktracks, budget);
+          case 1:
+            return graph.forwardCheckingColoring(numberOfBacktracks, budget);
+          default:
+            return graph.forwardCheckingSingletonColoring(numberOfBacktracks, budget);
+        }
+      } finally {
+        model.release(graph);
+      }
+    } else {
+      // With heuristics
+      StructureWithHeuristics graph = model.acquireWithHeuristics(heuristic == 3);
+      try {
+        if (fixedColors != null) graph.fixCliqueColors(fixedColors);
+
+        switch (method) {
+          case 0:
+            return graph.colorWithBacktracking(numberOfBacktracks, budget);
+          case 1:
+            return graph.colorWithForwardCheck(numberOfBacktracks, budget);
+          default:
+            return graph.colorWithSingleton(numberOfBacktracks, budget);
+        }
+      } finally {
+        model.release(graph);
+      }
+    }
+  }
+
   // Method to print the results in a table format
   public static void printExecutionResultsTable(
       List<ExecutionResult> results, String mapName, boolean heuristicsUsed) {
@@ -131,12 +243,13 @@ public class ConstraintSatisfactionSolver {
             .thenComparing(r -> r.algorithm));
 
     // Print each result
+    long algorithmsPerRun = results.stream().map(r -> r.algorithm).distinct().count();
     int count = 0;
     for (ExecutionResult r : results) {
       System.out.printf(
           "%-8d %-35s %-15d %-15d\n", r.runNumber, r.algorithm, r.duration, r.backtracks);
       count++;
-      if (count % 3 == 0) {
+      if (count % algorithmsPerRun == 0) {
         System.out.println(
             "--------------------------------------------------------------------------------------------------------------");
       }
@@ -0,0 +1,254 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//  Structural solver using cycle cutset conditioning.
+//  A greedy feedback vertex set (the cutset) is removed so that the remaining states form a
+//  forest. Only the cutset is searched by backtracking; for every consistent cutset colouring the
+//  forest is solved in linear time by directed arc consistency from the leaves to the roots,
+//  followed by a backward (top-down) assignment. When the cutset is too large the solve falls
+//  back to forward checking with heuristics.
+//  Domains are int bitsets, bit c is set when colour c is still possible.
+public final class CutsetSolver {
+  //  Largest cutset that is enumerated, larger ones fall back to the general search
+  static final int DEFAULT_MAX_CUTSET_SIZE = 16;
+
+  ProblemModel model;
+  int[][] nodes;
+  String[] colors;
+  String[] states;
+  int[][] adjacency; // Neighbour lists of the model
+  int[] fixedColors; // Colour each state is fixed to, -1 if free; null when nothing is fixed
+  int maxCutsetSize = DEFAULT_MAX_CUTSET_SIZE;
+  int numberOfBacktracks;
+  SearchBudget budget = SearchBudget.unlimited();
+
+  int[] cutset; // Cutset states in the order they are searched
+  boolean[] inCutset;
+  int[] forestOrder; // Forest states in BFS order, every parent comes before its children
+  int[] parent; // Parent in the forest, -1 for roots and cutset states
+
+  // Search state
+  int[] colorMap;
+  int[] domains;
+  int[] bestColorMap; // Deepest cutset assignment seen
+  int bestDepth;
+
+  public CutsetSolver(int[][] nodes, String[] colors, String[] states) {
+    this(new ProblemModel(nodes, colors, states));
+  }
+
+  //  Solver for a model shared with other solves, the fallback search takes its context from the
+  //  model's pool
+  public CutsetSolver(ProblemModel model) {
+    this.model = model;
+    this.nodes = model.nodes;
+    this.colors = model.colors;
+    this.states = model.states;
+    this.adjacency = model.adjacency;
+    findCutset();
+    buildForest();
+  }
+
+  //  Fixes the colours of some states before the search, e.g. the states of a clique
+  public void fixColors(int[] fixedColors) {
+    this.fixedColors = fixedColors;
+  }
+
+  public void setMaxCutsetSize(int maxCutsetSize) {
+    this.maxCutsetSize = maxCutsetSize;
+  }
+
+  public int[] getCutset() {
+    return cutset.clone();
+  }
+
+  //  Greedy feedback vertex set: states of degree 1 or less are on no cycle and are removed,
+  //  then the state of highest remaining degree goes into the cutset, until nothing is left
+  void findCutset() {
+    int n = adjacency.length;
+    int[] degree = new int[n];
+    boolean[] removed = new boolean[n];
+    inCutset = new boolean[n];
+    int[] stack = new int[n];
+    int[] chosen = new int[n];
+    int cutsetSize = 0;
+    int remaining = n;
+    for (int i = 0; i < n; i++) degree[i] = adjacency[i].length;
+
+    while (remaining > 0) {
+      // Peel states that cannot be on a cycle
+      int top = 0;
+      for (int i = 0; i < n; i++) {
+        if (!removed[i] && degree[i] <= 1) {
+          removed[i] = true;
+          stack[top++] = i;
+        }
+      }
+      while (top > 0) {
+        int state = stack[--top];
+        remaining--;
+        for (int neighbour : adjacency[state]) {
+          if (!removed[neighbour] && --degree[neighbour] <= 1) {
+            removed[neighbour] = true;
+            stack[top++] = neighbour;
+          }
+        }
+      }
+      if (remaining == 0) break;
+
+      // Every remaining state has degree 2 or more, so there is a cycle
+      int best = -1;
+      for (int i = 0; i < n; i++) {
+        if (!removed[i] && (best == -1 || degree[i] > degree[best])) best = i;
+      }
+      removed[best] = true;
+      inCutset[best] = true;
+      chosen[cutsetSize++] = best;
+      remaining--;
+      for (int neighbour : adjacency[best]) {
+        if (!removed[neighbour]) degree[neighbour]--;
+      }
+    }
+    cutset = Arrays.copyOf(chosen, cutsetSize);
+  }
+
+  //  Orders the forest breadth first from an arbitrary root in each tree
+  void buildForest() {
+    int n = adjacency.length;
+    parent = new int[n];
+    Arrays.fill(parent, -1);
+    forestOrder = new int[n - cutset.length];
+    boolean[] visited = inCutset.clone();
+    int size = 0;
+    for (int root = 0; root < n; root++) {
+      if (visited[root]) continue;
+      visited[root] = true;
+      int head = size;
+      forestOrder[size++] = root;
+      while (head < size) {
+        int state = forestOrder[head++];
+        for (int neighbour : adjacency[state]) {
+          if (!visited[neighbour]) {
+            visited[neighbour] = true;
+            parent[neighbour] = state;
+            forestOrder[size++] = neighbour;
+          }
+        }
+      }
+    }
+  }
+
+  //  Solves the coloring problem by cutset conditioning.
+  //  Returns the coloring if successfully assigned else null
+  public Map<String, String> cutsetColoring(int[] totalBackTrackCount) {
+    return cutsetColoring(totalBackTrackCount, SearchBudget.unlimited()).getSolvedColoring();
+  }
+
+  //  Solves the coloring problem by cutset conditioning within the given budget.
+  //  Falls back to forward checking with heuristics when the cutset is too large
+  public SolveResult cutsetColoring(int[] totalBackTrackCount, SearchBudget budget) {
+    if (cutset.length > maxCutsetSize || colors.length > 31) {
+      StructureWithHeuristics graph = model.acquireWithHeuristics(false);
+      try {
+        if (fixedColors != null) graph.fixColors(fixedColors);
+        return graph.colorWithForwardCheck(totalBackTrackCount, budget);
+      } finally {
+        model.release(graph);
+      }
+    }
+
+    this.budget = budget;
+    budget.start();
+    numberOfBacktracks = 0;
+    int n = adjacency.length;
+    colorMap = new int[n];
+    domains = new int[n];
+    bestColorMap = new int[n];
+    bestDepth = -1;
+    Arrays.fill(colorMap, -1);
+    Arrays.fill(bestColorMap, -1);
+
+    boolean solved = cutsetColoringUtil(0);
+    SolveStatus status =
+        solved
+            ? SolveStatus.SOLVED
+            : budget.isExhausted() ? SolveStatus.TIMEOUT : SolveStatus.UNSAT;
+    int[] assignment = solved ? colorMap : bestColorMap;
+
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < n; i++) {
+      if (assignment[i] != -1) map.put(states[i], colors[assignment[i]]);
+    }
+    totalBackTrackCount[0] = numberOfBacktracks;
+    return new SolveResult(status, map, budget.nodes, numberOfBacktracks);
+  }
+
+  //  Backtracking over the cutset states, the forest is solved once the cutset is coloured
+  boolean cutsetColoringUtil(int depth) {
+    if (budget.tick(numberOfBacktracks)) return false;
+    if (depth > bestDepth) {
+      bestDepth = depth;
+      System.arraycopy(colorMap, 0, bestColorMap, 0, colorMap.length);
+    }
+    if (depth == cutset.length) {
+      if (solveForest()) return true;
+      numberOfBacktracks++;
+      return false;
+    }
+
+    int state = cutset[depth];
+    for (int color = 0; color < colors.length; color++) {
+      if (isValidColor(state, color)) {
+        colorMap[state] = color;
+        if (cutsetColoringUtil(depth + 1)) return true;
+        if (budget.isExhausted()) return false;
+        colorMap[state] = -1;
+      }
+    }
+    numberOfBacktracks++;
+    return false;
+  }
+
+  boolean isValidColor(int state, int color) {
+    if (fixedColors != null && fixedColors[state] != -1 && fixedColors[state] != color) {
+      return false;
+    }
+    for (int neighbour : adjacency[state]) {
+      if (colorMap[neighbour] == color) return false;
+    }
+    return true;
+  }
+
+  //  Colours the forest given the cutset colours, in time linear in the size of the forest.
+  //  Returns false if the cutset colouring cannot be extended
+  boolean solveForest() {
+    int all = (1 << colors.length) - 1;
+    for (int state : forestOrder) {
+      int domain =
+          fixedColors != null && fixedColors[state] != -1 ? 1 << fixedColors[state] : all;
+      for (int neighbour : adjacency[state]) {
+        if (inCutset[neighbour]) domain &= ~(1 << colorMap[neighbour]);
+      }
+      domains[state] = domain;
+    }
+
+    // Directed arc consistency, children before parents: a parent colour is removed when the
+    // child has no other colour left
+    for (int i = forestOrder.length - 1; i >= 0; i--) {
+      int state = forestOrder[i];
+      if (domains[state] == 0) return false;
+      if (parent[state] != -1 && Integer.bitCount(domains[state]) == 1) {
+        domains[parent[state]] &= ~domains[state];
+      }
+    }
+
+    // Backward assignment, parents before children, never needs to backtrack
+    for (int state : forestOrder) {
+      int domain = domains[state];
+      if (parent[state] != -1) domain &= ~(1 << colorMap[parent[state]]);
+      colorMap[state] = Integer.numberOfTrailingZeros(domain);
+    }
+    return true;
+  }
+}
@@ -0,0 +1,334 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//  Coordinator of the multi-process search. Worker JVMs (DistributedWorker) connect over TCP on
+//  localhost. The coordinator splits the top of the search tree into subproblems and hands them
+//  out to idle workers. When it runs out of subproblems it asks busy workers to donate part of
+//  their search. The first solution found cancels every worker.
+//  Usage: java DistributedCoordinator <1 - Australia | 2 - United States> <workers>
+public class DistributedCoordinator {
+  // Message types, coordinator to worker
+  static final byte INIT = 1;
+  static final byte WORK = 2;
+  static final byte STEAL = 3;
+  static final byte CANCEL = 4;
+  // Message types, worker to coordinator
+  static final byte IDLE = 10;
+  static final byte SOLUTION = 11;
+  static final byte DONATION = 12;
+
+  //  The initial split aims for this many subproblems per worker
+  static final int SUBPROBLEMS_PER_WORKER = 8;
+  //  How long to wait for each worker JVM to connect
+  static final int WORKER_START_TIMEOUT_MILLIS = 30_000;
+
+  int[][] nodes;
+  String[] colors;
+  String[] states;
+  int numberOfWorkers;
+  int[][] adjacency; // Neighbour lists, from ProblemModel.neighbours
+  int[] fixedColors; // Colour each state is fixed to, -1 if free; null when nothing is fixed
+
+  // Shared state, guarded by this
+  Deque<Subproblem> queue = new ArrayDeque<>();
+  List<WorkerConnection> connections = new ArrayList<>();
+  int[] solution;
+  boolean finished;
+  long totalNodes;
+  long totalBacktracks;
+  Subproblem deepest; // Deepest subproblem seen, reported on timeout
+  boolean allConnected; // Every worker has connected, so an empty search means the end
+
+  public DistributedCoordinator(
+      int[][] nodes, String[] colors, String[] states, int numberOfWorkers) {
+    // Domains are int bitsets and colours go over the wire as bytes
+    if (colors.length > 31) throw new IllegalArgumentException("At most 31 colours");
+    this.nodes = nodes;
+    this.colors = colors;
+    this.states = states;
+    this.numberOfWorkers = numberOfWorkers;
+    this.adjacency = ProblemModel.neighbours(nodes);
+  }
+
+  //  Fixes the colours of some states before the search, e.g. the states of a clique
+  public void fixColors(int[] fixedColors) {
+    this.fixedColors = fixedColors;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, Object> randomInputs =
+        args[0].equals("1")
+            ? RandomInputGenerator.getRandomInputGeneratorForAustralia()
+            : RandomInputGenerator.getRandomInputGeneratorForUnitedStates();
+    String[] colors =
+        args[0].equals("1")
+            ? RandomInputGenerator.getColorsAustralia()
+            : RandomInputGenerator.getColorsUS();
+    DistributedCoordinator coordinator =
+        new DistributedCoordinator(
+            (int[][]) randomInputs.get("adjacencyMatrix"),
+            colors,
+            (String[]) randomInputs.get("states"),
+            Integer.parseInt(args[1]));
+
+    int[] numberOfBacktracks = new int[1];
+    long startTime = System.currentTimeMillis();
+    SolveResult result = coordinator.solve(numberOfBacktracks, SearchBudget.unlimited());
+    System.out.println(result.status + " " + result.coloring);
+    System.out.println("Duration: " + (System.currentTimeMillis() - startTime) + " milliseconds");
+    System.out.println("Number of Backtracks: " + numberOfBacktracks[0]);
+  }
+
+  //  Solves the coloring problem with worker processes within the given budget.
+  //  The time limit is enforced by the coordinator, node and backtrack limits are checked
+  //  against the totals the workers report whenever they finish a subproblem
+  public SolveResult solve(int[] totalBackTrackCount, SearchBudget budget) throws IOException {
+    budget.start();
+    long deadline =
+        budget.timeLimitMillis > 0
+            ? System.currentTimeMillis() + budget.timeLimitMillis
+            : Long.MAX_VALUE;
+
+    if (splitRoot()) {
+      List<Process> processes = new ArrayList<>();
+      try (ServerSocket server =
+          new ServerSocket(0, numberOfWorkers, InetAddress.getLoopbackAddress())) {
+        for (int w = 0; w < numberOfWorkers; w++) processes.add(startWorker(server.getLocalPort()));
+        // A worker JVM that fails to start makes accept time out instead of waiting forever
+        server.setSoTimeout(WORKER_START_TIMEOUT_MILLIS);
+        for (int w = 0; w < numberOfWorkers; w++) {
+          WorkerConnection connection = new WorkerConnection(server.accept());
+          connection.sendInit();
+          synchronized (this) {
+            connections.add(connection);
+          }
+          Thread reader = new Thread(connection::readMessages, "worker-reader-" + w);
+          reader.setDaemon(true);
+          reader.start();
+        }
+
+        synchronized (this) {
+          allConnected = true;
+          while (!finished) {
+            long now = System.currentTimeMillis();
+            if (now >= deadline
+                || totalNodes > budget.nodeLimit
+                || totalBacktracks >= budget.backtrackLimit) {
+              budget.exhausted = true;
+              break;
+            }
+            requestDonations();
+            try {
+              wait(Math.min(50, deadline - now));
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              break;
+            }
+          }
+          finished = true;
+          for (WorkerConnection connection : connections) connection.send(CANCEL);
+          if (solution == null && !budget.isExhausted() && !queue.isEmpty()) {
+            throw new IOException("Every worker failed before the search was done");
+          }
+        }
+      } finally {
+        for (Process process : processes) process.destroy();
+      }
+    }
+
+    SolveStatus status;
+    int[] assignment;
+    synchronized (this) {
+      if (solution != null) {
+        status = SolveStatus.SOLVED;
+        assignment = solution;
+      } else {
+        status = budget.isExhausted() ? SolveStatus.TIMEOUT : SolveStatus.UNSAT;
+        assignment = deepest.assignment;
+      }
+    }
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < states.length; i++) {
+      if (assignment[i] != -1) map.put(states[i], colors[assignment[i]]);
+    }
+    budget.nodes = totalNodes;
+    totalBackTrackCount[0] = (int) totalBacktracks;
+    return new SolveResult(status, map, totalNodes, (int) totalBacktracks);
+  }
+
+  //  Splits the top of the search tree breadth first until there is enough work for every
+  //  worker. Returns false if the split alone already decided the problem
+  boolean splitRoot() {
+    Subproblem root = Subproblem.root(nodes.length, colors.length, fixedColors);
+    queue.add(root);
+    deepest = root;
+    while (!queue.isEmpty() && queue.size() < numberOfWorkers * SUBPROBLEMS_PER_WORKER) {
+      Subproblem subproblem = queue.poll();
+      if (Subproblem.pickVariable(subproblem.assignment, subproblem.domains) == -1) {
+        solution = subproblem.assignment;
+        return false;
+      }
+      List<Subproblem> children = subproblem.split(adjacency);
+      queue.addAll(children);
+      if (!children.isEmpty()) deepest = children.getLast();
+      totalNodes++;
+      if (children.isEmpty()) totalBacktracks++;
+    }
+    return !queue.isEmpty();
+  }
+
+  Process startWorker(int port) throws IOException {
+    String java =
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    return new ProcessBuilder(
+            java, "-cp", System.getProperty("java.class.path"), "DistributedWorker", "" + port)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+  }
+
+  //  Hands out queued subproblems to idle workers, or asks busy workers for some of theirs.
+  //  Also detects the end of the search: no work queued, nobody busy, no donation pending
+  synchronized void requestDonations() {
+    if (finished) return;
+    boolean anyBusy = false;
+    boolean anyIdle = false;
+    // Copies, a worker found dead while sending drops out of connections
+    for (WorkerConnection connection : new ArrayList<>(connections)) {
+      if (connection.idle && !queue.isEmpty()) {
+        connection.sendWork(queue.poll());
+      }
+      anyBusy |= !connection.idle || connection.stealPending;
+      anyIdle |= connection.idle;
+    }
+    if (allConnected && ((!anyBusy && queue.isEmpty()) || connections.isEmpty())) {
+      finished = true;
+      notifyAll();
+      return;
+    }
+    if (anyIdle && queue.isEmpty()) {
+      for (WorkerConnection connection : new ArrayList<>(connections)) {
+        if (!connection.idle && !connection.stealPending) {
+          connection.stealPending = true;
+          connection.send(STEAL);
+        }
+      }
+    }
+  }
+
+  //  Connection to one worker process
+  class WorkerConnection {
+    Socket socket;
+    DataInputStream in;
+    DataOutputStream out;
+    boolean idle; // Waiting for work, guarded by the coordinator
+    boolean stealPending; // Asked to donate and has not answered yet
+    Subproblem current; // Last subproblem sent, null once the worker is idle
+    boolean dead;
+
+    WorkerConnection(Socket socket) throws IOException {
+      this.socket = socket;
+      socket.setTcpNoDelay(true);
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    //  Sends the map to the worker
+    void sendInit() throws IOException {
+      out.writeByte(INIT);
+      out.writeInt(adjacency.length);
+      for (int[] neighbours : adjacency) {
+        out.writeInt(neighbours.length);
+        for (int neighbour : neighbours) out.writeInt(neighbour);
+      }
+      out.flush();
+    }
+
+    void sendWork(Subproblem subproblem) {
+      idle = false;
+      current = subproblem;
+      try {
+        out.writeByte(WORK);
+        subproblem.write(out);
+        out.flush();
+      } catch (IOException e) {
+        markDead();
+      }
+    }
+
+    //  Drops a worker that went away and puts its subproblem back in the queue. What it donated
+    //  is queued already, searching those parts again is redundant but keeps UNSAT sound.
+    //  Called with the coordinator locked
+    void markDead() {
+      if (dead) return;
+      dead = true;
+      connections.remove(this);
+      if (current != null && !finished) queue.add(current);
+      current = null;
+      DistributedCoordinator.this.notifyAll();
+    }
+
+    void send(byte type) {
+      try {
+        out.writeByte(type);
+        out.flush();
+      } catch (IOException e) {
+        // Worker already gone
+      }
+    }
+
+    //  Handles messages from the worker until the connection closes
+    void readMessages() {
+      try {
+        while (true) {
+          byte type = in.readByte();
+          synchronized (DistributedCoordinator.this) {
+            if (type == IDLE) {
+              totalNodes += in.readLong();
+              totalBacktracks += in.readLong();
+              idle = true;
+              stealPending = false;
+              current = null;
+            } else if (type == SOLUTION) {
+              int[] assignment = new int[adjacency.length];
+              for (int i = 0; i < assignment.length; i++) assignment[i] = in.readByte();
+              totalNodes += in.readLong();
+              totalBacktracks += in.readLong();
+              if (solution == null) solution = assignment;
+              finished = true;
+            } else if (type == DONATION) {
+              int count = in.readInt();
+              for (int i = 0; i < count; i++) {
+                Subproblem subproblem = Subproblem.read(in);
+                if (subproblem.assignedCount() > deepest.assignedCount()) deepest = subproblem;
+                queue.add(subproblem);
+              }
+              stealPending = false;
+            }
+            requestDonations();
+            DistributedCoordinator.this.notifyAll();
+          }
+        }
+      } catch (IOException e) {
+        // Worker finished, was cancelled or died
+        synchronized (DistributedCoordinator.this) {
+          markDead();
+          requestDonations();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,181 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+//  Worker process of the distributed search, started by DistributedCoordinator.
+//  Usage: java DistributedWorker <coordinator port>
+//  The worker asks for a subproblem whenever it is idle, searches it with forward checking and
+//  MRV, and reports a solution or that the subproblem has none. When the coordinator asks it to
+//  share work it donates the untried colours at the shallowest level of its current search.
+public class DistributedWorker {
+  int[][] adjacency;
+  int numberOfStates;
+  DataOutputStream out;
+  BlockingQueue<Subproblem> work = new LinkedBlockingQueue<>();
+  volatile boolean stealRequested;
+  volatile boolean cancelled;
+  long nodes;
+  long backtracks;
+
+  // Search stack of the current subproblem, indexed by depth
+  int[] stackState;
+  int[] stackRemaining; // Colours not tried yet at each depth
+  int[][] stackDomains; // Domains before branching at each depth
+  int[] assignment;
+  int[] solution;
+
+  public static void main(String[] args) throws IOException {
+    int port = Integer.parseInt(args[0]);
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      socket.setTcpNoDelay(true);
+      new DistributedWorker().run(socket);
+    }
+  }
+
+  void run(Socket socket) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+    if (in.readByte() != DistributedCoordinator.INIT) throw new IOException("Expected INIT");
+    numberOfStates = in.readInt();
+    adjacency = new int[numberOfStates][];
+    for (int i = 0; i < numberOfStates; i++) {
+      adjacency[i] = new int[in.readInt()];
+      for (int j = 0; j < adjacency[i].length; j++) adjacency[i][j] = in.readInt();
+    }
+    stackState = new int[numberOfStates + 1];
+    stackRemaining = new int[numberOfStates + 1];
+    stackDomains = new int[numberOfStates + 1][];
+
+    Thread reader = new Thread(() -> readMessages(in), "coordinator-reader");
+    reader.setDaemon(true);
+    reader.start();
+
+    while (!cancelled) {
+      sendIdle();
+      Subproblem subproblem;
+      try {
+        subproblem = work.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (subproblem.assignment == null) return; // Cancelled while idle
+
+      assignment = subproblem.assignment;
+      solution = null;
+      search(subproblem.domains, 0);
+      if (solution != null) {
+        synchronized (out) {
+          out.writeByte(DistributedCoordinator.SOLUTION);
+          for (int color : solution) out.writeByte(color);
+          out.writeLong(nodes);
+          out.writeLong(backtracks);
+          out.flush();
+        }
+        return;
+      }
+    }
+  }
+
+  //  Handles messages from the coordinator while the main thread searches
+  void readMessages(DataInputStream in) {
+    try {
+      while (true) {
+        byte type = in.readByte();
+        if (type == DistributedCoordinator.WORK) {
+          work.add(Subproblem.read(in));
+        } else if (type == DistributedCoordinator.STEAL) {
+          stealRequested = true;
+        } else if (type == DistributedCoordinator.CANCEL) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      // Coordinator closed the connection, same as a cancel
+    }
+    cancelled = true;
+    work.add(new Subproblem(null, null));
+  }
+
+  //  Depth-first search with forward checking and MRV.
+  //  Returns true when a solution was found or the search was cancelled
+  boolean search(int[] domains, int depth) throws IOException {
+    nodes++;
+    if (cancelled) return true;
+    if (stealRequested) donate(depth);
+
+    int state = Subproblem.pickVariable(assignment, domains);
+    if (state == -1) {
+      solution = assignment.clone();
+      return true;
+    }
+
+    stackState[depth] = state;
+    stackDomains[depth] = domains;
+    stackRemaining[depth] = domains[state];
+    while (stackRemaining[depth] != 0) {
+      int color = Integer.numberOfTrailingZeros(stackRemaining[depth]);
+      stackRemaining[depth] &= stackRemaining[depth] - 1;
+      int[] childDomains = domains.clone();
+      if (Subproblem.forwardCheck(adjacency, assignment, childDomains, state, color)
+          && search(childDomains, depth + 1)) return true;
+      assignment[state] = -1;
+      backtracks++;
+    }
+    return false;
+  }
+
+  //  Gives away every untried colour at the shallowest depth that still has some.
+  //  The current path below that depth stays with this worker
+  void donate(int depth) throws IOException {
+    stealRequested = false;
+    int shallowest = 0;
+    while (shallowest < depth && stackRemaining[shallowest] == 0) shallowest++;
+
+    int[] prefix = assignment.clone();
+    int[] donated = new int[0];
+    if (shallowest < depth) {
+      // Undoing the assignments made at and below the shallowest depth
+      for (int d = shallowest; d < depth; d++) prefix[stackState[d]] = -1;
+      donated = new int[Integer.bitCount(stackRemaining[shallowest])];
+      int count = 0;
+      for (int bits = stackRemaining[shallowest]; bits != 0; bits &= bits - 1) {
+        donated[count++] = Integer.numberOfTrailingZeros(bits);
+      }
+      stackRemaining[shallowest] = 0;
+    }
+
+    Subproblem parent =
+        new Subproblem(prefix, shallowest < depth ? stackDomains[shallowest] : null);
+    synchronized (out) {
+      out.writeByte(DistributedCoordinator.DONATION);
+      int valid = 0;
+      Subproblem[] children = new Subproblem[donated.length];
+      for (int color : donated) {
+        Subproblem child = parent.child(adjacency, stackState[shallowest], color);
+        if (child != null) children[valid++] = child;
+      }
+      out.writeInt(valid);
+      for (int i = 0; i < valid; i++) children[i].write(out);
+      out.flush();
+    }
+  }
+
+  //  Reports that the previous subproblem had no solution and asks for the next one
+  void sendIdle() throws IOException {
+    synchronized (out) {
+      out.writeByte(DistributedCoordinator.IDLE);
+      out.writeLong(nodes);
+      out.writeLong(backtracks);
+      out.flush();
+    }
+    nodes = 0;
+    backtracks = 0;
+  }
+}
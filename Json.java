@@ -0,0 +1,191 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//  Minimal JSON reader and writer for the solving service.
+//  Objects are read as Map<String, Object>, arrays as List<Object>, numbers as Long or Double.
+public class Json {
+  //  Deeper nesting is rejected instead of overflowing the stack
+  static final int MAX_DEPTH = 64;
+
+  String text;
+  int position;
+  int depth; // Objects and arrays open around the position
+
+  Json(String text) {
+    this.text = text;
+  }
+
+  public static Object parse(String text) {
+    Json json = new Json(text);
+    Object value = json.readValue();
+    json.skipWhitespace();
+    if (json.position != text.length()) throw json.error("Unexpected trailing characters");
+    return value;
+  }
+
+  Object readValue() {
+    skipWhitespace();
+    if (position >= text.length()) throw error("Unexpected end of input");
+    char c = text.charAt(position);
+    if (c == '{' || c == '[') {
+      if (depth == MAX_DEPTH) throw error("Nesting deeper than " + MAX_DEPTH);
+      depth++;
+      Object value = c == '{' ? readObject() : readArray();
+      depth--;
+      return value;
+    }
+    if (c == '"') return readString();
+    if (text.startsWith("true", position)) {
+      position += 4;
+      return Boolean.TRUE;
+    }
+    if (text.startsWith("false", position)) {
+      position += 5;
+      return Boolean.FALSE;
+    }
+    if (text.startsWith("null", position)) {
+      position += 4;
+      return null;
+    }
+    return readNumber();
+  }
+
+  Map<String, Object> readObject() {
+    Map<String, Object> object = new LinkedHashMap<>();
+    position++; // {
+    skipWhitespace();
+    if (peek() == '}') {
+      position++;
+      return object;
+    }
+    while (true) {
+      skipWhitespace();
+      if (peek() != '"') throw error("Expected a key");
+      String key = readString();
+      skipWhitespace();
+      expect(':');
+      object.put(key, readValue());
+      skipWhitespace();
+      if (peek() == ',') {
+        position++;
+      } else {
+        expect('}');
+        return object;
+      }
+    }
+  }
+
+  List<Object> readArray() {
+    List<Object> array = new ArrayList<>();
+    position++; // [
+    skipWhitespace();
+    if (peek() == ']') {
+      position++;
+      return array;
+    }
+    while (true) {
+      array.add(readValue());
+      skipWhitespace();
+      if (peek() == ',') {
+        position++;
+      } else {
+        expect(']');
+        return array;
+      }
+    }
+  }
+
+  String readString() {
+    StringBuilder builder = new StringBuilder();
+    position++; // "
+    while (true) {
+      if (position >= text.length()) throw error("Unterminated string");
+      char c = text.charAt(position++);
+      if (c == '"') return builder.toString();
+      if (c != '\\') {
+        builder.append(c);
+        continue;
+      }
+      if (position >= text.length()) throw error("Unterminated string");
+      char escaped = text.charAt(position++);
+      switch (escaped) {
+        case 'b':
+          builder.append('\b');
+          break;
+        case 'f':
+          builder.append('\f');
+          break;
+        case 'n':
+          builder.append('\n');
+          break;
+        case 'r':
+          builder.append('\r');
+          break;
+        case 't':
+          builder.append('\t');
+          break;
+        case 'u':
+          if (position + 4 > text.length()) throw error("Invalid unicode escape");
+          builder.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+          position += 4;
+          break;
+        default:
+          builder.append(escaped);
+          break;
+      }
+    }
+  }
+
+  Object readNumber() {
+    int start = position;
+    while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+      position++;
+    }
+    String number = text.substring(start, position);
+    if (number.isEmpty()) throw error("Unexpected character");
+    try {
+      if (number.contains(".") || number.contains("e") || number.contains("E")) {
+        return Double.parseDouble(number);
+      }
+      return Long.parseLong(number);
+    } catch (NumberFormatException e) {
+      throw error("Invalid number " + number);
+    }
+  }
+
+  void skipWhitespace() {
+    while (position < text.length() && Character.isWhitespace(text.charAt(position))) position++;
+  }
+
+  char peek() {
+    if (position >= text.length()) throw error("Unexpected end of input");
+    return text.charAt(position);
+  }
+
+  void expect(char c) {
+    if (peek() != c) throw error("Expected '" + c + "'");
+    position++;
+  }
+
+  IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at position " + position);
+  }
+
+  //  Returns the string as a JSON string literal
+  public static String quote(String value) {
+    StringBuilder builder = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < 0x20) {
+        builder.append(String.format("\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.append('"').toString();
+  }
+}
@@ -0,0 +1,143 @@
+import java.util.HashMap;
+import java.util.Map;
+
+//  Preprocessor that removes every state with fewer than k neighbours before the search.
+//  Such a state can always be coloured once its remaining neighbours are coloured, so only the
+//  k-core of the graph has to be searched. The peeled states are coloured greedily afterwards,
+//  in reverse peeling order.
+public final class KCorePeeling {
+  int[][] nodes;
+  int k;
+  int[][] adjacency; // Neighbour lists, from ProblemModel.neighbours
+  int[] peeledStates; // States in the order they were peeled
+  int[] coreStates; // States that remain in the core, in their original order
+
+  public KCorePeeling(int[][] nodes, int k) {
+    this.nodes = nodes;
+    this.k = k;
+    this.adjacency = ProblemModel.neighbours(nodes);
+    peel();
+  }
+
+  //  Repeatedly removes a state of minimum remaining degree while that degree is below k.
+  //  States are kept in buckets by degree (Batagelj-Zaversnik), so this runs in linear time.
+  void peel() {
+    int n = adjacency.length;
+    int[] degree = new int[n];
+    int maxDegree = 0;
+    for (int i = 0; i < n; i++) {
+      degree[i] = adjacency[i].length;
+      maxDegree = Math.max(maxDegree, degree[i]);
+    }
+
+    // bin[d] is the first position of degree d in the sorted order
+    int[] bin = new int[maxDegree + 1];
+    for (int i = 0; i < n; i++) bin[degree[i]]++;
+    int start = 0;
+    for (int d = 0; d <= maxDegree; d++) {
+      int count = bin[d];
+      bin[d] = start;
+      start += count;
+    }
+
+    // Counting sort of the states by degree
+    int[] order = new int[n];
+    int[] position = new int[n];
+    for (int i = 0; i < n; i++) {
+      position[i] = bin[degree[i]]++;
+      order[position[i]] = i;
+    }
+    for (int d = maxDegree; d > 0; d--) bin[d] = bin[d - 1];
+    bin[0] = 0;
+
+    boolean[] peeled = new boolean[n];
+    int peeledCount = 0;
+    for (int p = 0; p < n; p++) {
+      int state = order[p];
+      if (degree[state] >= k) break;
+      peeled[state] = true;
+      peeledCount++;
+
+      // Moving each remaining neighbour one bucket down
+      for (int neighbour : adjacency[state]) {
+        if (degree[neighbour] > degree[state]) {
+          int neighbourDegree = degree[neighbour];
+          int firstPosition = bin[neighbourDegree];
+          int firstState = order[firstPosition];
+          if (firstState != neighbour) {
+            order[position[neighbour]] = firstState;
+            position[firstState] = position[neighbour];
+            order[firstPosition] = neighbour;
+            position[neighbour] = firstPosition;
+          }
+          bin[neighbourDegree]++;
+          degree[neighbour]--;
+        }
+      }
+    }
+
+    peeledStates = new int[peeledCount];
+    System.arraycopy(order, 0, peeledStates, 0, peeledCount);
+    coreStates = new int[n - peeledCount];
+    int c = 0;
+    for (int i = 0; i < n; i++) {
+      if (!peeled[i]) coreStates[c++] = i;
+    }
+  }
+
+  //  Returns the adjacency matrix of the core
+  public int[][] getCoreStructure() {
+    int[][] core = new int[coreStates.length][coreStates.length];
+    for (int i = 0; i < coreStates.length; i++) {
+      for (int j = 0; j < coreStates.length; j++) {
+        core[i][j] = nodes[coreStates[i]][coreStates[j]];
+      }
+    }
+    return core;
+  }
+
+  //  Returns the names of the states in the core
+  public String[] getCoreStates(String[] states) {
+    String[] core = new String[coreStates.length];
+    for (int i = 0; i < coreStates.length; i++) {
+      core[i] = states[coreStates[i]];
+    }
+    return core;
+  }
+
+  //  Colours the peeled states on top of a solved core.
+  //  Every peeled state had fewer than k neighbours left when it was removed, so in reverse
+  //  order there is always a colour free for it. Unsolved results are returned unchanged.
+  public SolveResult extend(SolveResult coreResult, String[] colors, String[] states) {
+    if (coreResult.status != SolveStatus.SOLVED) return coreResult;
+
+    Map<String, Integer> colorIndex = new HashMap<>();
+    for (int i = 0; i < colors.length; i++) colorIndex.put(colors[i], i);
+
+    int[] colorMap = new int[adjacency.length];
+    for (int i = 0; i < adjacency.length; i++) {
+      String color = coreResult.coloring.get(states[i]);
+      colorMap[i] = color == null ? -1 : colorIndex.get(color);
+    }
+
+    boolean[] used = new boolean[colors.length];
+    for (int p = peeledStates.length - 1; p >= 0; p--) {
+      int state = peeledStates[p];
+      for (int neighbour : adjacency[state]) {
+        if (colorMap[neighbour] != -1) used[colorMap[neighbour]] = true;
+      }
+      int color = 0;
+      while (used[color]) color++;
+      colorMap[state] = color;
+      for (int neighbour : adjacency[state]) {
+        if (colorMap[neighbour] != -1) used[colorMap[neighbour]] = false;
+      }
+    }
+
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < states.length; i++) {
+      map.put(states[i], colors[colorMap[i]]);
+    }
+    return new SolveResult(SolveStatus.SOLVED, map, coreResult.nodes, coreResult.backtracks);
+  }
+}
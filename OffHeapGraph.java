@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//  Map stored off the Java heap in compressed sparse row (CSR) form, for graphs too large for an
+//  int[][] matrix. offsets[v] .. offsets[v + 1] is the range of v's neighbours in neighbours,
+//  sorted ascending. Borders are stored in both directions, as in ProblemModel.neighbours.
+//  The segments live in a shared arena, so one graph can be read by any number of solver threads
+//  without copying; close() frees them. A graph can be written to a file and mapped back, which
+//  loads it without reading or parsing.
+//
+//  File format (version 1, little endian so it maps without byte swapping on common hardware):
+//    int magic, int version, int states, int unused, long neighbour entries,
+//    long[states + 1] offsets, int[entries] neighbours
+public class OffHeapGraph implements AutoCloseable {
+  static final int MAGIC = 0x4353504f; // "CSPO"
+  static final int VERSION = 1;
+  static final long HEADER_BYTES = 24;
+  static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+  static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+  Arena arena;
+  int numberOfStates;
+  long numberOfEntries; // Twice the number of borders
+  MemorySegment offsets;
+  MemorySegment neighbours;
+
+  OffHeapGraph(Arena arena, int numberOfStates, MemorySegment offsets, MemorySegment neighbours) {
+    this.arena = arena;
+    this.numberOfStates = numberOfStates;
+    this.offsets = offsets;
+    this.neighbours = neighbours;
+    this.numberOfEntries = neighbours.byteSize() / Integer.BYTES;
+  }
+
+  //  Copies an adjacency matrix, with the borders of ProblemModel.neighbours
+  public static OffHeapGraph fromMatrix(int[][] nodes) {
+    int n = nodes.length;
+    int[][] adjacency = ProblemModel.neighbours(nodes);
+    long entries = 0;
+    for (int[] list : adjacency) entries += list.length;
+    Arena arena = Arena.ofShared();
+    MemorySegment offsets = arena.allocate((n + 1L) * Long.BYTES, Long.BYTES);
+    MemorySegment neighbours = arena.allocate(entries * Integer.BYTES, Integer.BYTES);
+    long entry = 0;
+    for (int i = 0; i < n; i++) {
+      offsets.setAtIndex(LONG, i, entry);
+      for (int j : adjacency[i]) neighbours.setAtIndex(INT, entry++, j);
+    }
+    offsets.setAtIndex(LONG, n, entry);
+    return new OffHeapGraph(arena, n, offsets, neighbours);
+  }
+
+  //  Builds the graph from a list of borders, from[e] - to[e]. Each border is listed once
+  public static OffHeapGraph fromEdges(int numberOfStates, int[] from, int[] to) {
+    int n = numberOfStates;
+    Arena arena = Arena.ofShared();
+    MemorySegment offsets = arena.allocate((n + 1L) * Long.BYTES, Long.BYTES);
+    MemorySegment neighbours = arena.allocate(2L * from.length * Integer.BYTES, Integer.BYTES);
+
+    // Counting sort by state: degrees, then prefix sums, then the entries
+    long[] next = new long[n + 1];
+    for (int e = 0; e < from.length; e++) {
+      next[from[e] + 1]++;
+      next[to[e] + 1]++;
+    }
+    for (int v = 0; v < n; v++) next[v + 1] += next[v];
+    for (int v = 0; v <= n; v++) offsets.setAtIndex(LONG, v, next[v]);
+    for (int e = 0; e < from.length; e++) {
+      neighbours.setAtIndex(INT, next[from[e]]++, to[e]);
+      neighbours.setAtIndex(INT, next[to[e]]++, from[e]);
+    }
+
+    // Neighbour lists ascending, so searches in index order can skip earlier states
+    OffHeapGraph graph = new OffHeapGraph(arena, n, offsets, neighbours);
+    for (int v = 0; v < n; v++) graph.sortNeighbours(v);
+    return graph;
+  }
+
+  //  Insertion sort of one neighbour list, lists of maps are short
+  void sortNeighbours(int state) {
+    long first = offsets.getAtIndex(LONG, state);
+    long end = offsets.getAtIndex(LONG, state + 1);
+    for (long i = first + 1; i < end; i++) {
+      int neighbour = neighbours.getAtIndex(INT, i);
+      long j = i - 1;
+      while (j >= first && neighbours.getAtIndex(INT, j) > neighbour) {
+        neighbours.setAtIndex(INT, j + 1, neighbours.getAtIndex(INT, j));
+        j--;
+      }
+      neighbours.setAtIndex(INT, j + 1, neighbour);
+    }
+  }
+
+  //  Writes the graph to a file, through a writable mapping so the segments are copied once
+  public void write(Path path) throws IOException {
+    long offsetBytes = offsets.byteSize();
+    try (Arena mapping = Arena.ofConfined()) {
+      MemorySegment file = createFile(path, numberOfStates, numberOfEntries, mapping);
+      MemorySegment.copy(offsets, 0, file, HEADER_BYTES, offsetBytes);
+      MemorySegment.copy(neighbours, 0, file, HEADER_BYTES + offsetBytes, neighbours.byteSize());
+      file.force();
+    }
+  }
+
+  //  Creates a graph file of the given size and maps it writable in the arena, with the header
+  //  filled in. The offsets start at HEADER_BYTES, the neighbours after them
+  static MemorySegment createFile(Path path, int numberOfStates, long numberOfEntries, Arena arena)
+      throws IOException {
+    long size =
+        HEADER_BYTES + (numberOfStates + 1L) * Long.BYTES + numberOfEntries * Integer.BYTES;
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      MemorySegment file = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+      file.set(INT, 0, MAGIC);
+      file.set(INT, 4, VERSION);
+      file.set(INT, 8, numberOfStates);
+      file.set(INT, 12, 0);
+      file.set(LONG, 16, numberOfEntries);
+      return file;
+    }
+  }
+
+  //  Maps a graph file read-only. Pages are loaded by the operating system on first access, and
+  //  every thread reads the same pages
+  public static OffHeapGraph map(Path path) throws IOException {
+    Arena arena = Arena.ofShared();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_BYTES) throw new IOException("Not a graph file: " + path);
+      MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+      if (file.get(INT, 0) != MAGIC) throw new IOException("Not a graph file: " + path);
+      int version = file.get(INT, 4);
+      if (version != VERSION) throw new IOException("Unsupported graph version " + version);
+      int n = file.get(INT, 8);
+      long entries = file.get(LONG, 16);
+      long offsetBytes = (n + 1L) * Long.BYTES;
+      if (size != HEADER_BYTES + offsetBytes + entries * Integer.BYTES) {
+        throw new IOException("Truncated graph file: " + path);
+      }
+      MemorySegment offsets = file.asSlice(HEADER_BYTES, offsetBytes);
+      MemorySegment neighbours = file.asSlice(HEADER_BYTES + offsetBytes);
+      return new OffHeapGraph(arena, n, offsets, neighbours);
+    } catch (IOException | RuntimeException e) {
+      arena.close();
+      throw e;
+    }
+  }
+
+  public int getNumberOfStates() {
+    return numberOfStates;
+  }
+
+  //  Number of borders, each counted once
+  public long getNumberOfBorders() {
+    return numberOfEntries / 2;
+  }
+
+  //  Index of the first neighbour of the state in the neighbour entries
+  long firstNeighbour(int state) {
+    return offsets.getAtIndex(LONG, state);
+  }
+
+  //  Index after the last neighbour of the state
+  long endNeighbour(int state) {
+    return offsets.getAtIndex(LONG, state + 1);
+  }
+
+  int neighbourAt(long entry) {
+    return neighbours.getAtIndex(INT, entry);
+  }
+
+  public int degree(int state) {
+    return (int) (endNeighbour(state) - firstNeighbour(state));
+  }
+
+  @Override
+  public void close() {
+    arena.close();
+  }
+}
@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//  Backtracking + FC in static state order (as CheckpointedSearch) over an OffHeapGraph, with the
+//  domains and the trail off the Java heap as well, so a search on a very large map creates no
+//  garbage. The search state is in a confined arena owned by the search: the graph can be shared
+//  by many searches, each search belongs to one thread. close() frees the search state.
+//  States are coloured in index order, so state v is assigned exactly when v < depth and the
+//  colour of an assigned state is its value index - 1. Forward checking only removes the colour
+//  just assigned, so the trail holds the states it was removed from and undo takes the colour
+//  from the depth.
+//  Domains are int bitsets, at most 31 colours.
+//
+//  Usage: java OffHeapSearch <graph file> [states] [threads]
+//  Solves the graph in the file with 4 colours, first writing a king's graph (a grid in which
+//  diagonal cells border too) of the given number of states to the file if it does not exist.
+//  Every thread runs its own search on the same mapped graph. The search state of each thread takes
+//  about 32 bytes per state of direct memory (domains, value indices, trail marks and a trail of up
+//  to 4 removals per state on a king's graph), which counts against -XX:MaxDirectMemorySize, so
+//  large runs need e.g. -XX:MaxDirectMemorySize=1g for 4 threads on 4 million states. The mapped
+//  graph itself does not count.
+public class OffHeapSearch implements AutoCloseable {
+  static final ValueLayout.OfInt INT = OffHeapGraph.INT;
+  static final ValueLayout.OfLong LONG = OffHeapGraph.LONG;
+
+  OffHeapGraph graph;
+  String[] colors;
+  String[] states; // Names for the result, null for graphs too large to report by name
+  Arena arena;
+
+  // Search state
+  int depth;
+  MemorySegment domains; // int per state, bit c set while colour c is possible
+  MemorySegment valueIndex; // int per depth, next colour to try
+  MemorySegment trail; // int per removal, the state the colour of its depth was removed from
+  long trailSize;
+  MemorySegment trailMarks; // long per depth, trail size before the decision
+  long nodeCount;
+  int numberOfBacktracks;
+
+  public OffHeapSearch(OffHeapGraph graph, String[] colors, String[] states) {
+    if (colors.length > 31) throw new IllegalArgumentException("At most 31 colours");
+    this.graph = graph;
+    this.colors = colors;
+    this.states = states;
+    int n = graph.getNumberOfStates();
+    this.arena = Arena.ofConfined();
+    this.domains = arena.allocate((long) n * Integer.BYTES, Integer.BYTES);
+    this.valueIndex = arena.allocate((n + 1L) * Integer.BYTES, Integer.BYTES);
+    // Removals only go to later neighbours, so at most one per border, and a state can lose
+    // each colour only once
+    long trailCapacity =
+        Math.max(1, Math.min(graph.getNumberOfBorders(), (long) n * colors.length));
+    this.trail = arena.allocate(trailCapacity * Integer.BYTES, Integer.BYTES);
+    this.trailMarks = arena.allocate((n + 1L) * Long.BYTES, Long.BYTES);
+    int all = (1 << colors.length) - 1;
+    for (long v = 0; v < n; v++) domains.setAtIndex(INT, v, all);
+    valueIndex.fill((byte) 0);
+  }
+
+  //  Runs the search within the given budget
+  public SolveResult solve(int[] totalBackTrackCount, SearchBudget budget) {
+    budget.start();
+    SolveStatus status = search(budget);
+    Map<String, String> map = new HashMap<>();
+    if (states != null) {
+      for (int v = 0; v < depth; v++) map.put(states[v], colors[getColor(v)]);
+    }
+    budget.nodes = nodeCount;
+    totalBackTrackCount[0] = numberOfBacktracks;
+    return new SolveResult(status, map, nodeCount, numberOfBacktracks);
+  }
+
+  SolveStatus search(SearchBudget budget) {
+    int n = graph.getNumberOfStates();
+    while (true) {
+      if (depth == n) return SolveStatus.SOLVED;
+      if (budget.tick(numberOfBacktracks)) return SolveStatus.TIMEOUT;
+      nodeCount++;
+
+      int index = valueIndex.getAtIndex(INT, depth);
+      int remaining = domains.getAtIndex(INT, depth) >>> index << index;
+      if (remaining == 0) {
+        // Every colour failed, going back to the previous state
+        if (depth == 0) return SolveStatus.UNSAT;
+        depth--;
+        undo(depth);
+        numberOfBacktracks++;
+        continue;
+      }
+
+      int color = Integer.numberOfTrailingZeros(remaining);
+      valueIndex.setAtIndex(INT, depth, color + 1);
+      trailMarks.setAtIndex(LONG, depth, trailSize);
+      if (forwardCheck(depth, color)) {
+        depth++;
+        valueIndex.setAtIndex(INT, depth, 0);
+      } else {
+        undo(depth);
+        numberOfBacktracks++;
+      }
+    }
+  }
+
+  //  Removes the colour from the later neighbours of the state, recording each removal on the
+  //  trail. Returns false if a domain is wiped out
+  boolean forwardCheck(int state, int color) {
+    int bit = 1 << color;
+    long end = graph.endNeighbour(state);
+    for (long entry = graph.firstNeighbour(state); entry < end; entry++) {
+      int neighbour = graph.neighbourAt(entry);
+      if (neighbour <= state) continue;
+      int domain = domains.getAtIndex(INT, neighbour);
+      if ((domain & bit) != 0) {
+        domains.setAtIndex(INT, neighbour, domain & ~bit);
+        trail.setAtIndex(INT, trailSize++, neighbour);
+        if (domain == bit) return false;
+      }
+    }
+    return true;
+  }
+
+  //  Puts back the removals of the decision at the depth
+  void undo(int depth) {
+    int bit = 1 << (valueIndex.getAtIndex(INT, depth) - 1);
+    long mark = trailMarks.getAtIndex(LONG, depth);
+    while (trailSize > mark) {
+      int state = trail.getAtIndex(INT, --trailSize);
+      domains.setAtIndex(INT, state, domains.getAtIndex(INT, state) | bit);
+    }
+  }
+
+  //  Colour index of the state, -1 if it is not assigned
+  public int getColor(int state) {
+    return state < depth ? valueIndex.getAtIndex(INT, state) - 1 : -1;
+  }
+
+  @Override
+  public void close() {
+    arena.close();
+  }
+
+  //  Writes a king's graph of about the given number of states straight into the mapped file, one
+  //  state at a time, so no list of borders is built on the heap
+  static void writeKingsGraph(Path path, int numberOfStates) throws IOException {
+    int width = (int) Math.sqrt(numberOfStates);
+    int n = width * width;
+    long borders = 2L * width * (width - 1) + 2L * (width - 1) * (width - 1);
+    long offsetBytes = (n + 1L) * Long.BYTES;
+    try (Arena mapping = Arena.ofConfined()) {
+      MemorySegment file = OffHeapGraph.createFile(path, n, 2 * borders, mapping);
+      MemorySegment offsets = file.asSlice(OffHeapGraph.HEADER_BYTES, offsetBytes);
+      MemorySegment neighbours = file.asSlice(OffHeapGraph.HEADER_BYTES + offsetBytes);
+      long entry = 0;
+      for (int row = 0; row < width; row++) {
+        for (int column = 0; column < width; column++) {
+          offsets.setAtIndex(LONG, row * width + column, entry);
+          // Row above, same row, row below, so the neighbours come out ascending
+          for (int r = Math.max(0, row - 1); r <= Math.min(width - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(width - 1, column + 1); c++) {
+              if (r != row || c != column) neighbours.setAtIndex(INT, entry++, r * width + c);
+            }
+          }
+        }
+      }
+      offsets.setAtIndex(LONG, n, entry);
+      file.force();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Path path = Path.of(args[0]);
+    int numberOfStates = args.length > 1 ? Integer.parseInt(args[1]) : 4_000_000;
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+    if (!Files.exists(path)) {
+      long startTime = System.currentTimeMillis();
+      writeKingsGraph(path, numberOfStates);
+      System.out.println(
+          "Wrote " + path + " in " + (System.currentTimeMillis() - startTime) + " milliseconds");
+    }
+
+    long startTime = System.currentTimeMillis();
+    try (OffHeapGraph graph = OffHeapGraph.map(path)) {
+      System.out.println(
+          "Mapped "
+              + graph.getNumberOfStates()
+              + " states and "
+              + graph.getNumberOfBorders()
+              + " borders in "
+              + (System.currentTimeMillis() - startTime)
+              + " milliseconds");
+
+      String[] colors = RandomInputGenerator.getColorsUS();
+      List<Thread> workers = new ArrayList<>();
+      List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+      for (int t = 0; t < threads; t++) {
+        int worker = t;
+        workers.add(
+            Thread.ofPlatform()
+                .start(
+                    () -> {
+                      long solveStart = System.currentTimeMillis();
+                      try (OffHeapSearch search = new OffHeapSearch(graph, colors, null)) {
+                        int[] numberOfBacktracks = new int[1];
+                        SolveResult result =
+                            search.solve(numberOfBacktracks, SearchBudget.unlimited());
+                        System.out.printf(
+                            "Thread %d: %s, %d nodes, %d backtracks, %d milliseconds%n",
+                            worker,
+                            result.status,
+                            result.nodes,
+                            numberOfBacktracks[0],
+                            System.currentTimeMillis() - solveStart);
+                      } catch (Throwable e) {
+                        failures.add(e);
+                      }
+                    }));
+      }
+      for (Thread worker : workers) worker.join();
+      if (!failures.isEmpty()) {
+        Exception failure =
+            new Exception(
+                failures.size() + " of " + threads + " search threads failed", failures.get(0));
+        for (int i = 1; i < failures.size(); i++) failure.addSuppressed(failures.get(i));
+        throw failure;
+      }
+    }
+    Runtime runtime = Runtime.getRuntime();
+    System.out.println(
+        "Java heap in use: " + (runtime.totalMemory() - runtime.freeMemory()) / 1_000_000 + " MB");
+  }
+}
@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//  The immutable part of a colouring problem: the map, its colours and state names and what the
+//  searches derive from them (neighbour lists, degrees, border ids, name tables). It is built
+//  once and shared by any number of threads; the mutable search state lives in search contexts,
+//  the StructureWithoutHeuristics and StructureWithHeuristics instances made from the model.
+//  Contexts are pooled: acquire takes an idle one (or makes one, which only allocates the
+//  per-solve arrays), release hands it back for the next solve on any thread. A context is used by
+//  one thread at a time. The arrays passed in must not be changed afterwards.
+//  A border listed in either direction of the matrix is a border both ways. neighbours() is the one
+//  place that reads borders off a matrix; every module takes its neighbour lists from it, so
+//  peeling, cliques, orderings and all the solvers colour the same map.
+public class ProblemModel {
+  final int[][] nodes;
+  final String[] colors;
+  final String[] states;
+  final int[][] adjacency; // adjacency[v] lists the states v borders, ascending
+  final List<List<Integer>> neighbourLists; // adjacency as read-only lists
+  //  edgeIds[v][j] is the border between v and adjacency[v][j], one id per pair of states, so
+  //  edgeIds[u] has the same id for the border from u's side
+  final int[][] edgeIds;
+  final int numberOfEdges; // Borders, each pair of bordering states once
+  final int[] nonNeighbourCount; // Number of states (itself included) not bordering the state
+  final Map<String, Integer> stateIndex;
+
+  // Idle search contexts of this model
+  final ConcurrentLinkedQueue<StructureWithoutHeuristics> idleWithoutHeuristics =
+      new ConcurrentLinkedQueue<>();
+  final ConcurrentLinkedQueue<StructureWithHeuristics> idleWithHeuristics =
+      new ConcurrentLinkedQueue<>();
+  final ConcurrentLinkedQueue<StructureWithHeuristics> idleAdaptive =
+      new ConcurrentLinkedQueue<>();
+
+  public ProblemModel(int[][] nodes, String[] colors, String[] states) {
+    this.nodes = nodes;
+    this.colors = colors;
+    this.states = states;
+    int n = nodes.length;
+    this.adjacency = neighbours(nodes);
+    this.edgeIds = new int[n][];
+    this.nonNeighbourCount = new int[n];
+    List<List<Integer>> lists = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      List<Integer> list = new ArrayList<>();
+      for (int neighbour : adjacency[i]) list.add(neighbour);
+      nonNeighbourCount[i] = n - adjacency[i].length;
+      lists.add(Collections.unmodifiableList(list));
+      edgeIds[i] = new int[adjacency[i].length];
+    }
+    // A border gets its id from its lower state. Lists are ascending, so the lower neighbours of
+    // a state come first in its list, in the order the ids are handed out
+    int[] lowerCount = new int[n];
+    int edgeCount = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < adjacency[i].length; j++) {
+        int neighbour = adjacency[i][j];
+        if (neighbour < i) continue;
+        edgeIds[i][j] = edgeCount;
+        edgeIds[neighbour][lowerCount[neighbour]++] = edgeCount++;
+      }
+    }
+    this.neighbourLists = Collections.unmodifiableList(lists);
+    this.numberOfEdges = edgeCount;
+    Map<String, Integer> index = new HashMap<>();
+    for (int i = 0; i < states.length; i++) index.put(states[i], i);
+    this.stateIndex = Collections.unmodifiableMap(index);
+  }
+
+  //  Neighbour lists of the matrix, ascending. A border listed in either direction counts both
+  //  ways, a state never borders itself
+  public static int[][] neighbours(int[][] nodes) {
+    int n = nodes.length;
+    int[][] neighbours = new int[n][];
+    for (int i = 0; i < n; i++) {
+      int degree = 0;
+      for (int j = 0; j < n; j++) {
+        if (i != j && (nodes[i][j] == 1 || nodes[j][i] == 1)) degree++;
+      }
+      neighbours[i] = new int[degree];
+      degree = 0;
+      for (int j = 0; j < n; j++) {
+        if (i != j && (nodes[i][j] == 1 || nodes[j][i] == 1)) neighbours[i][degree++] = j;
+      }
+    }
+    return neighbours;
+  }
+
+  public int getNumberOfStates() {
+    return nodes.length;
+  }
+
+  //  Number of states the state borders
+  public int degree(int state) {
+    return adjacency[state].length;
+  }
+
+  //  Index of the state with the name, -1 if there is none
+  public int indexOf(String state) {
+    return stateIndex.getOrDefault(state, -1);
+  }
+
+  //  Takes an idle search context without heuristics, or makes a new one
+  public StructureWithoutHeuristics acquireWithoutHeuristics() {
+    StructureWithoutHeuristics context = idleWithoutHeuristics.poll();
+    return context != null ? context : new StructureWithoutHeuristics(this);
+  }
+
+  //  Takes an idle search context with heuristics, or makes a new one. Adaptive contexts keep
+  //  their border weights from earlier solves
+  public StructureWithHeuristics acquireWithHeuristics(boolean adaptiveOrdering) {
+    StructureWithHeuristics context =
+        (adaptiveOrdering ? idleAdaptive : idleWithHeuristics).poll();
+    return context != null ? context : new StructureWithHeuristics(this, adaptiveOrdering);
+  }
+
+  //  Hands a context back after its solve, without its side constraints
+  public void release(StructureWithoutHeuristics context) {
+    context.setSideConstraints(null);
+    idleWithoutHeuristics.offer(context);
+  }
+
+  public void release(StructureWithHeuristics context) {
+    context.setSideConstraints(null);
+    (context.adaptiveOrdering ? idleAdaptive : idleWithHeuristics).offer(context);
+  }
+
+  //  Solves one model on several threads with pooled contexts, then builds a new solver from the
+  //  matrix for every solve as before, and prints the solves per second of both.
+  //  Usage: java ProblemModel [threads] [solves per thread]
+  public static void main(String[] args) throws InterruptedException {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int solves = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    Map<String, Object> randomInputs =
+        RandomInputGenerator.getRandomInputGeneratorForUnitedStates(1);
+    int[][] nodes = (int[][]) randomInputs.get("adjacencyMatrix");
+    String[] states = (String[]) randomInputs.get("states");
+    String[] colors = RandomInputGenerator.getColorsUS();
+    ProblemModel model = new ProblemModel(nodes, colors, states);
+
+    for (int round = 0; round < 2; round++) {
+      for (boolean pooled : new boolean[] {true, false}) {
+        long startTime = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+          workers.add(
+              Thread.ofPlatform()
+                  .start(
+                      () -> {
+                        int[] numberOfBacktracks = new int[1];
+                        for (int i = 0; i < solves; i++) {
+                          if (pooled) {
+                            StructureWithHeuristics context = model.acquireWithHeuristics(false);
+                            try {
+                              context.colorWithForwardCheck(
+                                  numberOfBacktracks, SearchBudget.unlimited());
+                            } finally {
+                              model.release(context);
+                            }
+                          } else {
+                            new StructureWithHeuristics(nodes, colors, states)
+                                .colorWithForwardCheck(
+                                    numberOfBacktracks, SearchBudget.unlimited());
+                          }
+                        }
+                      }));
+        }
+        for (Thread worker : workers) worker.join();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        if (round == 1) {
+          System.out.printf(
+              "%-28s %10.0f solves per second%n",
+              pooled ? "Shared model, pooled" : "New solver per solve",
+              threads * solves / seconds);
+        }
+      }
+    }
+  }
+}
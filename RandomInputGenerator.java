@@ -2,6 +2,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -240,12 +241,12 @@ public class RandomInputGenerator {
   };
 
   private static Map<String, Object> getRandomInputGenerator(
-      int[][] adjacencyMatrix, String[] states) {
+      int[][] adjacencyMatrix, String[] states, Random random) {
     int n = states.length;
 
     // Generating a list of indices and shuffle them to create a random permutation
     List<Integer> indices = IntStream.range(0, n).boxed().collect(Collectors.toList());
-    Collections.shuffle(indices);
+    Collections.shuffle(indices, random);
 
     // Permuting the state names
     String[] permutedStates = new String[n];
@@ -269,11 +270,45 @@ public class RandomInputGenerator {
   }
 
   public static Map<String, Object> getRandomInputGeneratorForAustralia() {
-    return getRandomInputGenerator(austrialiaAdjacentStatesMatrix, australiaStates);
+    return getRandomInputGenerator(austrialiaAdjacentStatesMatrix, australiaStates, new Random());
   }
 
   public static Map<String, Object> getRandomInputGeneratorForUnitedStates() {
-    return getRandomInputGenerator(unitedStatesAdjacentStatesMatrix, unitedStatesStates);
+    return getRandomInputGenerator(
+        unitedStatesAdjacentStatesMatrix, unitedStatesStates, new Random());
+  }
+
+  // Seeded variants, the same seed always gives the same permutation
+  public static Map<String, Object> getRandomInputGeneratorForAustralia(long seed) {
+    return getRandomInputGenerator(
+        austrialiaAdjacentStatesMatrix, australiaStates, new Random(seed));
+  }
+
+  public static Map<String, Object> getRandomInputGeneratorForUnitedStates(long seed) {
+    return getRandomInputGenerator(
+        unitedStatesAdjacentStatesMatrix, unitedStatesStates, new Random(seed));
+  }
+
+  // Random map for benchmarks beyond the two fixed maps: every pair of states borders with the
+  // probability that gives the requested average number of neighbours (Erdos-Renyi)
+  public static Map<String, Object> getRandomGraph(
+      int numberOfStates, double averageDegree, long seed) {
+    Random random = new Random(seed);
+    int n = numberOfStates;
+    double probability = n > 1 ? Math.min(1, averageDegree / (n - 1)) : 0;
+    int[][] adjacencyMatrix = new int[n][n];
+    String[] states = new String[n];
+    for (int i = 0; i < n; i++) {
+      states[i] = "S" + i;
+      for (int j = i + 1; j < n; j++) {
+        if (random.nextDouble() < probability) adjacencyMatrix[i][j] = adjacencyMatrix[j][i] = 1;
+      }
+    }
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("adjacencyMatrix", adjacencyMatrix);
+    result.put("states", states);
+    return result;
   }
 
   // Methods to get the list of hues
@@ -284,4 +319,13 @@ public class RandomInputGenerator {
   static String[] getColorsUS() {
     return new String[] {"Red", "Green", "Blue", "Yellow"};
   }
+
+  static String[] getColors(int numberOfColors) {
+    String[] palette = {"Red", "Green", "Blue", "Yellow", "Purple", "Orange", "Cyan", "Magenta"};
+    String[] colors = new String[numberOfColors];
+    for (int i = 0; i < numberOfColors; i++) {
+      colors[i] = i < palette.length ? palette[i] : "Color" + (i + 1);
+    }
+    return colors;
+  }
 }
@@ -0,0 +1,68 @@
+//  Set of the ints 0 .. capacity - 1 kept in two arrays: dense[0 .. size - 1] holds the members in
+//  no particular order and sparse[v] is the position of v in dense. A removed value is swapped to
+//  just past the members, so removals undone in reverse order only move size back; restore puts a
+//  value back in O(1) in any order. Membership, removal and restore are O(1), and iterating with
+//  get(0) .. get(size() - 1) only visits the members.
+public class ReversibleSparseSet {
+  int[] dense;
+  int[] sparse;
+  int size;
+
+  //  A full set
+  public ReversibleSparseSet(int capacity) {
+    this.dense = new int[capacity];
+    this.sparse = new int[capacity];
+    for (int v = 0; v < capacity; v++) {
+      dense[v] = v;
+      sparse[v] = v;
+    }
+    this.size = capacity;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  //  The member at position i, 0 <= i < size()
+  public int get(int i) {
+    return dense[i];
+  }
+
+  public boolean contains(int value) {
+    return sparse[value] < size;
+  }
+
+  //  Returns false if the value was not a member
+  public boolean remove(int value) {
+    int position = sparse[value];
+    if (position >= size) return false;
+    swap(position, --size);
+    return true;
+  }
+
+  //  Puts a removed value back. Returns false if it was a member already
+  public boolean restore(int value) {
+    int position = sparse[value];
+    if (position < size) return false;
+    swap(position, size++);
+    return true;
+  }
+
+  //  Makes every value a member again, for the next solve
+  public void fill() {
+    size = dense.length;
+  }
+
+  void swap(int i, int j) {
+    int a = dense[i];
+    int b = dense[j];
+    dense[i] = b;
+    sparse[b] = i;
+    dense[j] = a;
+    sparse[a] = j;
+  }
+}
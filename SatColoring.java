@@ -0,0 +1,143 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//  Solves the colouring problem by encoding it to CNF and running CdclSolver on it.
+//  Variable (state, colour) is true when the state takes that colour.
+public class SatColoring {
+  int[][] nodes;
+  int[][] adjacency; // Neighbour lists of the model
+  String[] colors;
+  String[] states;
+  int numberOfBacktracks; // Conflicts of the last solve
+  boolean symmetryBreaking = true;
+  int[] fixedColors; // Colour each state is fixed to, -1 if free; null when nothing is fixed
+
+  public SatColoring(int[][] nodes, String[] colors, String[] states) {
+    this(new ProblemModel(nodes, colors, states));
+  }
+
+  //  Encoder for a model shared with other solves, reusing its neighbour lists
+  public SatColoring(ProblemModel model) {
+    this.nodes = model.nodes;
+    this.adjacency = model.adjacency;
+    this.colors = model.colors;
+    this.states = model.states;
+  }
+
+  //  Fixes the colours of some states before the search, e.g. the states of a clique
+  public void fixColors(int[] fixedColors) {
+    this.fixedColors = fixedColors;
+  }
+
+  public void setSymmetryBreaking(boolean symmetryBreaking) {
+    this.symmetryBreaking = symmetryBreaking;
+  }
+
+  //  DIMACS variable of a state taking a colour
+  int variable(int state, int color) {
+    return state * colors.length + color + 1;
+  }
+
+  //  Encodes the problem as a list of DIMACS clauses
+  public List<int[]> encode() {
+    List<int[]> clauses = new ArrayList<>();
+    int k = colors.length;
+    for (int i = 0; i < nodes.length; i++) {
+      // At least one colour
+      int[] atLeastOne = new int[k];
+      for (int c = 0; c < k; c++) atLeastOne[c] = variable(i, c);
+      clauses.add(atLeastOne);
+
+      // At most one colour
+      for (int c = 0; c < k; c++) {
+        for (int d = c + 1; d < k; d++) clauses.add(new int[] {-variable(i, c), -variable(i, d)});
+      }
+    }
+
+    // Bordering states differ
+    for (int i = 0; i < nodes.length; i++) {
+      for (int j : adjacency[i]) {
+        if (j < i) continue;
+        for (int c = 0; c < k; c++) clauses.add(new int[] {-variable(i, c), -variable(j, c)});
+      }
+    }
+
+    if (fixedColors != null) {
+      for (int i = 0; i < nodes.length; i++) {
+        if (fixedColors[i] != -1) clauses.add(new int[] {variable(i, fixedColors[i])});
+      }
+    } else if (symmetryBreaking) {
+      // Colours can be renamed freely, so the i-th state in order of decreasing degree
+      // never needs a colour above i
+      Integer[] order = statesByDegree();
+      for (int position = 0; position < Math.min(k - 1, nodes.length); position++) {
+        int state = order[position];
+        for (int c = position + 1; c < k; c++) clauses.add(new int[] {-variable(state, c)});
+      }
+    }
+    return clauses;
+  }
+
+  //  Returns the states ordered by decreasing degree
+  Integer[] statesByDegree() {
+    Integer[] order = new Integer[nodes.length];
+    for (int i = 0; i < nodes.length; i++) order[i] = i;
+    Arrays.sort(order, (a, b) -> adjacency[b].length - adjacency[a].length);
+    return order;
+  }
+
+  //  Writes the CNF in DIMACS format for offline comparison with other solvers
+  public void writeDimacs(Path path) throws IOException {
+    List<int[]> clauses = encode();
+    try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+      writer.write("c graph colouring, " + nodes.length + " states, " + colors.length + " colours");
+      writer.newLine();
+      writer.write("p cnf " + nodes.length * colors.length + " " + clauses.size());
+      writer.newLine();
+      StringBuilder line = new StringBuilder();
+      for (int[] clause : clauses) {
+        line.setLength(0);
+        for (int literal : clause) line.append(literal).append(' ');
+        line.append('0');
+        writer.write(line.toString());
+        writer.newLine();
+      }
+    }
+  }
+
+  //  Solves the coloring problem with the CDCL backend.
+  //  Returns the coloring if successfully assigned else null
+  public Map<String, String> cdclColoring(int[] totalBackTrackCount) {
+    return cdclColoring(totalBackTrackCount, SearchBudget.unlimited()).getSolvedColoring();
+  }
+
+  //  Solves the coloring problem with the CDCL backend within the given budget.
+  //  Conflicts are reported as backtracks
+  public SolveResult cdclColoring(int[] totalBackTrackCount, SearchBudget budget) {
+    CdclSolver solver = new CdclSolver(nodes.length * colors.length);
+    for (int[] clause : encode()) solver.addClause(clause);
+    SolveStatus status = solver.solve(budget);
+
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < states.length; i++) {
+      for (int c = 0; c < colors.length; c++) {
+        boolean colored =
+            status == SolveStatus.SOLVED
+                ? solver.modelValue(variable(i, c))
+                : solver.partialValue(variable(i, c)) == 1;
+        if (colored) map.put(states[i], colors[c]);
+      }
+    }
+
+    numberOfBacktracks = solver.getConflicts();
+    totalBackTrackCount[0] = numberOfBacktracks;
+    return new SolveResult(status, map, budget.nodes, numberOfBacktracks);
+  }
+}
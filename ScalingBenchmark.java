@@ -0,0 +1,314 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+//  Scaling suite for the search configurations of StructureWithoutHeuristics and
+//  StructureWithHeuristics on generated maps (RandomInputGenerator.getRandomGraph).
+//  Three sweeps each vary one parameter and keep the others fixed: the number of states, the
+//  average number of neighbours and the number of colours. Every point is solved on a few seeds
+//  under a time limit per solve, recording the median time, nodes and backtracks and the peak
+//  heap. Once a configuration times out on every seed of a point, the rest of that sweep is
+//  skipped for it.
+//  The growth of the search nodes with the number of states is fitted by least squares as a
+//  power law (n^b) and as an exponential (a^n), and the better fit is reported together with the
+//  cliff of every sweep: the first point that timed out, else the largest jump in nodes between
+//  neighbouring points. The report is printed and written as Markdown.
+//  Usage: java ScalingBenchmark [time limit per solve in ms] [seeds] [report file]
+public class ScalingBenchmark {
+  static final long DEFAULT_TIME_LIMIT_MILLIS = 1000;
+  static final int DEFAULT_SEEDS = 3;
+
+  //  Sweep values, each sweep keeps the other two parameters at the fixed values below
+  static final double[] STATE_COUNTS = {10, 20, 30, 40, 50, 60, 80, 100, 150, 200};
+  static final double[] DEGREES = {1, 2, 3, 4, 5, 6, 8, 10};
+  static final double[] COLOR_COUNTS = {2, 3, 4, 5, 6, 8};
+  static final int FIXED_STATES = 40;
+  static final double FIXED_DEGREE = 4;
+  static final int FIXED_COLORS = 3;
+
+  //  The configurations of AllocationBudgetCheck that use the two Structure classes
+  static final List<String> CONFIGURATIONS =
+      List.of(
+          "Backtracking",
+          "Forward Checking",
+          "Forward Checking + Singleton",
+          "Heuristics + Backtracking",
+          "Heuristics + Forward Checking",
+          "Heuristics + Forward Checking + Singleton",
+          "dom/wdeg + Forward Checking",
+          "dom/wdeg + Forward Checking + Singleton");
+
+  //  Measurements of one configuration at one point of a sweep
+  static class Point {
+    double parameter;
+    long medianMillis;
+    long medianNodes;
+    long medianBacktracks;
+    long peakHeapBytes; // Largest heap growth over the live data before the solve
+    int solved;
+    int unsat;
+    int timeouts;
+  }
+
+  long timeLimitMillis;
+  int seeds;
+  List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+
+  public ScalingBenchmark(long timeLimitMillis, int seeds) {
+    this.timeLimitMillis = timeLimitMillis;
+    this.seeds = seeds;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) heapPools.add(pool);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    long timeLimit = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_TIME_LIMIT_MILLIS;
+    int seeds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SEEDS;
+    Path reportPath = Path.of(args.length > 2 ? args[2] : "scaling-report.md");
+
+    ScalingBenchmark benchmark = new ScalingBenchmark(timeLimit, seeds);
+    String report = benchmark.run();
+    System.out.println(report);
+    Files.writeString(reportPath, report);
+    System.out.println("Report written to " + reportPath);
+  }
+
+  //  Runs the three sweeps for every configuration and returns the report
+  public String run() {
+    Map<String, AllocationBudgetCheck.Configuration> all = AllocationBudgetCheck.configurations();
+    String[] sweeps = {"States", "Average degree", "Colours"};
+    double[][] values = {STATE_COUNTS, DEGREES, COLOR_COUNTS};
+    List<List<List<Point>>> results = new ArrayList<>(); // [sweep][configuration][point]
+
+    // One untimed pass so that the JIT has compiled the searches before anything is measured
+    for (String name : CONFIGURATIONS) measure(all.get(name), 0, FIXED_STATES / 2);
+
+    for (int s = 0; s < sweeps.length; s++) {
+      List<List<Point>> sweep = new ArrayList<>();
+      for (String name : CONFIGURATIONS) {
+        List<Point> points = new ArrayList<>();
+        for (double value : values[s]) {
+          Point point = measure(all.get(name), s, value);
+          points.add(point);
+          System.out.printf(
+              Locale.ROOT,
+              "%-15s %6s %-42s %8d ms %12d nodes%s%n",
+              sweeps[s],
+              format(value),
+              name,
+              point.medianMillis,
+              point.medianNodes,
+              point.timeouts > 0 ? "  " + point.timeouts + " timeouts" : "");
+          if (point.timeouts == seeds) break;
+        }
+        sweep.add(points);
+      }
+      results.add(sweep);
+    }
+    return report(sweeps, results);
+  }
+
+  //  Solves the maps of one point of a sweep on every seed
+  Point measure(AllocationBudgetCheck.Configuration configuration, int sweep, double value) {
+    int states = sweep == 0 ? (int) value : FIXED_STATES;
+    double degree = sweep == 1 ? value : FIXED_DEGREE;
+    int numberOfColors = sweep == 2 ? (int) value : FIXED_COLORS;
+    String[] colors = RandomInputGenerator.getColors(numberOfColors);
+
+    Point point = new Point();
+    point.parameter = value;
+    long[] millis = new long[seeds];
+    long[] nodes = new long[seeds];
+    long[] backtracks = new long[seeds];
+    for (int seed = 0; seed < seeds; seed++) {
+      Map<String, Object> randomInputs = RandomInputGenerator.getRandomGraph(states, degree, seed);
+      AllocationBudgetCheck.Search search =
+          configuration.create(
+              (int[][]) randomInputs.get("adjacencyMatrix"),
+              colors,
+              (String[]) randomInputs.get("states"));
+
+      long baseline = resetPeakHeap();
+      long startTime = System.nanoTime();
+      SolveResult result = search.solve(new int[1], SearchBudget.ofMillis(timeLimitMillis));
+      millis[seed] = (System.nanoTime() - startTime) / 1_000_000;
+      point.peakHeapBytes = Math.max(point.peakHeapBytes, peakHeap() - baseline);
+      nodes[seed] = result.nodes;
+      backtracks[seed] = result.backtracks;
+      switch (result.status) {
+        case SOLVED -> point.solved++;
+        case UNSAT -> point.unsat++;
+        default -> point.timeouts++;
+      }
+    }
+    point.medianMillis = median(millis);
+    point.medianNodes = median(nodes);
+    point.medianBacktracks = median(backtracks);
+    return point;
+  }
+
+  //  Collects garbage and restarts the peak usage of the heap pools.
+  //  Returns the heap in use afterwards
+  long resetPeakHeap() {
+    System.gc();
+    long used = 0;
+    for (MemoryPoolMXBean pool : heapPools) {
+      pool.resetPeakUsage();
+      used += pool.getUsage().getUsed();
+    }
+    return used;
+  }
+
+  //  Sum of the peak usage of the heap pools since resetPeakHeap
+  long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : heapPools) peak += pool.getPeakUsage().getUsed();
+    return peak;
+  }
+
+  static long median(long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  String report(String[] sweeps, List<List<List<Point>>> results) {
+    StringBuilder report = new StringBuilder("# Scaling report\n\n");
+    report.append(
+        String.format(
+            Locale.ROOT,
+            "Random maps, %d seeds per point, %d ms limit per solve. Fixed values: %d states,"
+                + " average degree %s, %d colours.%n",
+            seeds,
+            timeLimitMillis,
+            FIXED_STATES,
+            format(FIXED_DEGREE),
+            FIXED_COLORS));
+
+    report.append("\n## Growth\n\n");
+    report.append("Fit of the median search nodes over the number of states, on points without");
+    report.append(" timeouts.\n\n");
+    report.append("| Configuration | Growth of nodes | R² |");
+    for (String sweep : sweeps) report.append(" Cliff (").append(sweep.toLowerCase()).append(") |");
+    report.append("\n|---|---|---|---|---|---|\n");
+    for (int c = 0; c < CONFIGURATIONS.size(); c++) {
+      String[] fit = fitGrowth(results.get(0).get(c));
+      report.append("| ").append(CONFIGURATIONS.get(c));
+      report.append(" | ").append(fit[0]).append(" | ").append(fit[1]).append(" |");
+      for (int s = 0; s < sweeps.length; s++) {
+        report.append(' ').append(cliff(results.get(s).get(c))).append(" |");
+      }
+      report.append('\n');
+    }
+
+    for (int s = 0; s < sweeps.length; s++) {
+      report.append("\n## ").append(sweeps[s]).append("\n\n");
+      report.append("| Configuration | ").append(sweeps[s]);
+      report.append(" | Median ms | Median nodes | Median backtracks | Peak heap (MB)");
+      report.append(" | Solved | UNSAT | Timeouts |\n");
+      report.append("|---|---|---|---|---|---|---|---|---|\n");
+      for (int c = 0; c < CONFIGURATIONS.size(); c++) {
+        for (Point point : results.get(s).get(c)) {
+          report.append(
+              String.format(
+                  Locale.ROOT,
+                  "| %s | %s | %d | %d | %d | %.1f | %d | %d | %d |%n",
+                  CONFIGURATIONS.get(c),
+                  format(point.parameter),
+                  point.medianMillis,
+                  point.medianNodes,
+                  point.medianBacktracks,
+                  point.peakHeapBytes / 1e6,
+                  point.solved,
+                  point.unsat,
+                  point.timeouts));
+        }
+      }
+    }
+    return report.toString();
+  }
+
+  //  Least squares fits of ln(nodes) against n (exponential) and against ln(n) (power law).
+  //  Returns the better fit as text and its R²
+  static String[] fitGrowth(List<Point> points) {
+    List<double[]> samples = new ArrayList<>();
+    for (Point point : points) {
+      if (point.timeouts == 0 && point.medianNodes > 0) {
+        samples.add(new double[] {point.parameter, Math.log(point.medianNodes)});
+      }
+    }
+    if (samples.size() < 3) return new String[] {"too few points", "-"};
+
+    double[] exponential = leastSquares(samples, false);
+    double[] power = leastSquares(samples, true);
+    if (exponential[2] >= power[2]) {
+      return new String[] {
+        String.format(Locale.ROOT, "%.3f^n (exponential)", Math.exp(exponential[1])),
+        String.format(Locale.ROOT, "%.3f", exponential[2])
+      };
+    }
+    return new String[] {
+      String.format(Locale.ROOT, "n^%.2f (polynomial)", power[1]),
+      String.format(Locale.ROOT, "%.3f", power[2])
+    };
+  }
+
+  //  Fits y = a + b x, with x replaced by ln(x) when logarithmic.
+  //  Returns a, b and the coefficient of determination
+  static double[] leastSquares(List<double[]> samples, boolean logarithmic) {
+    int count = samples.size();
+    double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+    for (double[] sample : samples) {
+      double x = logarithmic ? Math.log(sample[0]) : sample[0];
+      sumX += x;
+      sumY += sample[1];
+      sumXX += x * x;
+      sumXY += x * sample[1];
+    }
+    double b = (count * sumXY - sumX * sumY) / (count * sumXX - sumX * sumX);
+    double a = (sumY - b * sumX) / count;
+    double meanY = sumY / count;
+    double residual = 0, total = 0;
+    for (double[] sample : samples) {
+      double x = logarithmic ? Math.log(sample[0]) : sample[0];
+      residual += Math.pow(sample[1] - (a + b * x), 2);
+      total += Math.pow(sample[1] - meanY, 2);
+    }
+    return new double[] {a, b, total == 0 ? 1 : 1 - residual / total};
+  }
+
+  //  The first point with a timeout, else the largest growth in nodes between two neighbouring
+  //  points
+  static String cliff(List<Point> points) {
+    for (Point point : points) {
+      if (point.timeouts > 0) return "times out at " + format(point.parameter);
+    }
+    double largest = 0;
+    Point cliff = null;
+    for (int i = 1; i < points.size(); i++) {
+      double ratio =
+          (double) points.get(i).medianNodes / Math.max(1, points.get(i - 1).medianNodes);
+      if (ratio > largest) {
+        largest = ratio;
+        cliff = points.get(i);
+      }
+    }
+    if (cliff == null || largest <= 1) return "none";
+    return String.format(Locale.ROOT, "x%.1f nodes at %s", largest, format(cliff.parameter));
+  }
+
+  static String format(double value) {
+    return value == Math.rint(value)
+        ? String.valueOf((long) value)
+        : String.format(Locale.ROOT, "%.1f", value);
+  }
+}
@@ -0,0 +1,65 @@
+//  Limits the amount of work a single solve may do.
+//  A budget can bound wall-clock time, search nodes and backtracks; a limit of 0 means no limit.
+//  A budget keeps its own counters, so use a fresh one for every solve.
+public class SearchBudget {
+  //  The clock is only read once every CHECK_INTERVAL nodes to keep tick() cheap
+  static final int CHECK_INTERVAL = 1024;
+
+  long timeLimitMillis;
+  long nodeLimit;
+  long backtrackLimit;
+
+  long deadline;
+  long nodes;
+  int countdown;
+  boolean exhausted;
+
+  public SearchBudget(long timeLimitMillis, long nodeLimit, long backtrackLimit) {
+    this.timeLimitMillis = timeLimitMillis;
+    this.nodeLimit = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+    this.backtrackLimit = backtrackLimit > 0 ? backtrackLimit : Long.MAX_VALUE;
+  }
+
+  public static SearchBudget unlimited() {
+    return new SearchBudget(0, 0, 0);
+  }
+
+  public static SearchBudget ofMillis(long timeLimitMillis) {
+    return new SearchBudget(timeLimitMillis, 0, 0);
+  }
+
+  public static SearchBudget ofNodes(long nodeLimit) {
+    return new SearchBudget(0, nodeLimit, 0);
+  }
+
+  public static SearchBudget ofBacktracks(long backtrackLimit) {
+    return new SearchBudget(0, 0, backtrackLimit);
+  }
+
+  //  Resets the counters and starts the clock
+  void start() {
+    nodes = 0;
+    countdown = CHECK_INTERVAL;
+    exhausted = false;
+    deadline =
+        timeLimitMillis > 0 ? System.nanoTime() + timeLimitMillis * 1_000_000 : Long.MAX_VALUE;
+  }
+
+  //  Counts one search node.
+  //  Returns true once any of the limits has been reached
+  boolean tick(long backtracks) {
+    if (exhausted) return true;
+    nodes++;
+    if (nodes > nodeLimit || backtracks >= backtrackLimit) {
+      exhausted = true;
+    } else if (--countdown == 0) {
+      countdown = CHECK_INTERVAL;
+      exhausted = System.nanoTime() >= deadline;
+    }
+    return exhausted;
+  }
+
+  boolean isExhausted() {
+    return exhausted;
+  }
+}
@@ -0,0 +1,242 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+//  Constraints on top of "bordering states differ": states with a fixed colour, colours a state
+//  may not take and a maximum number of states per colour (e.g. for balanced colourings).
+//  Fixed and forbidden colours are unary, they are taken out of the domains before the search.
+//  Capacities are propagated during the search: a colour that has reached its capacity is
+//  removed from every unassigned domain, and a counting bound fails a branch early when the
+//  remaining capacity cannot hold the unassigned states.
+//  The forward checking and singleton modes of both Structure classes use these propagators.
+//  The constraints are not changed by a search: the colour counts live in the search context and
+//  are passed in, so one instance can be shared by any number of contexts and threads.
+public class SideConstraints {
+  static final int UNLIMITED = Integer.MAX_VALUE;
+
+  int numberOfStates;
+  int numberOfColors;
+  int[] fixedColors; // Colour each state is fixed to, -1 if free
+  boolean[][] forbidden; // forbidden[state][color]
+  int[] capacity; // Maximum number of states of each colour, UNLIMITED if there is none
+  boolean hasCapacities;
+
+  public SideConstraints(int numberOfStates, int numberOfColors) {
+    this.numberOfStates = numberOfStates;
+    this.numberOfColors = numberOfColors;
+    this.fixedColors = new int[numberOfStates];
+    this.forbidden = new boolean[numberOfStates][numberOfColors];
+    this.capacity = new int[numberOfColors];
+    Arrays.fill(fixedColors, -1);
+    Arrays.fill(capacity, UNLIMITED);
+  }
+
+  //  Every colour may be used for at most ceil(states / colours) states
+  public static SideConstraints balanced(int numberOfStates, int numberOfColors) {
+    SideConstraints constraints = new SideConstraints(numberOfStates, numberOfColors);
+    int limit = (numberOfStates + numberOfColors - 1) / numberOfColors;
+    for (int color = 0; color < numberOfColors; color++) constraints.setCapacity(color, limit);
+    return constraints;
+  }
+
+  public void fixColor(int state, int color) {
+    fixedColors[state] = color;
+  }
+
+  //  Fixes the colours of some states, -1 leaves a state free. A state already fixed to another
+  //  colour keeps both fixes, so it can take no colour at all
+  public void fixColors(int[] fixedColors) {
+    for (int i = 0; i < numberOfStates; i++) {
+      if (fixedColors[i] == -1) continue;
+      if (this.fixedColors[i] != -1 && this.fixedColors[i] != fixedColors[i]) {
+        Arrays.fill(forbidden[i], true);
+      } else {
+        this.fixedColors[i] = fixedColors[i];
+      }
+    }
+  }
+
+  //  Copy of the constraints, for a solve that adds to them
+  public SideConstraints copy() {
+    SideConstraints copy = new SideConstraints(numberOfStates, numberOfColors);
+    System.arraycopy(fixedColors, 0, copy.fixedColors, 0, numberOfStates);
+    for (int i = 0; i < numberOfStates; i++) {
+      System.arraycopy(forbidden[i], 0, copy.forbidden[i], 0, numberOfColors);
+    }
+    System.arraycopy(capacity, 0, copy.capacity, 0, numberOfColors);
+    copy.hasCapacities = hasCapacities;
+    return copy;
+  }
+
+  //  Returns true when swapping two colours turns every allowed colouring into another allowed
+  //  one: no fixed or forbidden colours and the same capacity for every colour. Only then may the
+  //  states of a clique be given arbitrary distinct colours up front
+  public boolean isColorSymmetric() {
+    for (int i = 0; i < numberOfStates; i++) {
+      if (fixedColors[i] != -1) return false;
+      for (int color = 0; color < numberOfColors; color++) {
+        if (forbidden[i][color]) return false;
+      }
+    }
+    for (int color = 1; color < numberOfColors; color++) {
+      if (capacity[color] != capacity[0]) return false;
+    }
+    return true;
+  }
+
+  public void forbidColor(int state, int color) {
+    forbidden[state][color] = true;
+  }
+
+  public void setCapacity(int color, int capacity) {
+    this.capacity[color] = capacity;
+    hasCapacities = false;
+    for (int limit : this.capacity) hasCapacities |= limit != UNLIMITED;
+  }
+
+  //  Checks the unary constraints of the state
+  boolean allows(int state, int color) {
+    if (fixedColors[state] != -1 && fixedColors[state] != color) return false;
+    return !forbidden[state][color] && capacity[color] > 0;
+  }
+
+  //  Removes the colours the unary constraints rule out from the initial domain of a state
+  void restrictDomain(int state, List<Integer> domain) {
+    domain.removeIf(color -> !allows(state, color));
+  }
+
+  void restrictDomain(int state, ReversibleSparseSet domain) {
+    for (int color = 0; color < numberOfColors; color++) {
+      if (!allows(state, color)) domain.remove(color);
+    }
+  }
+
+  //  Returns true when no further state may take the colour, used[c] being the number of
+  //  assigned states of colour c
+  boolean isFull(int color, int[] used) {
+    return used[color] >= capacity[color];
+  }
+
+  //  Counting bound for the capacities. The unassigned states whose domain is a single colour
+  //  must fit into what is left of that colour, and all unassigned states must fit into what is
+  //  left of all colours together.
+  //  forced is scratch space of one int per colour.
+  //  Returns false if the capacities can no longer be met
+  boolean isFeasible(List<List<Integer>> domainMap, int[] colorMap, int[] used, int[] forced) {
+    if (!hasCapacities) return true;
+    Arrays.fill(forced, 0);
+    int unassigned = 0;
+    for (int i = 0; i < colorMap.length; i++) {
+      if (colorMap[i] != -1) continue;
+      unassigned++;
+      List<Integer> domain = domainMap.get(i);
+      if (domain.size() == 1) forced[domain.getFirst()]++;
+    }
+    return fitsCapacities(unassigned, used, forced);
+  }
+
+  //  Same bound over the domains of the unassigned states only
+  boolean isFeasible(
+      ReversibleSparseSet[] domains, ReversibleSparseSet unassigned, int[] used, int[] forced) {
+    if (!hasCapacities) return true;
+    Arrays.fill(forced, 0);
+    for (int p = 0; p < unassigned.size(); p++) {
+      ReversibleSparseSet domain = domains[unassigned.get(p)];
+      if (domain.size() == 1) forced[domain.get(0)]++;
+    }
+    return fitsCapacities(unassigned.size(), used, forced);
+  }
+
+  //  The forced counts and then the unassigned states against what is left of each colour
+  boolean fitsCapacities(int unassigned, int[] used, int[] forced) {
+    long room = 0;
+    for (int color = 0; color < numberOfColors; color++) {
+      long left = (long) capacity[color] - used[color];
+      if (forced[color] > left) return false;
+      room += left;
+    }
+    return room >= unassigned;
+  }
+
+  //  Checks a complete colouring against every side constraint
+  public boolean isSatisfiedBy(Map<String, String> coloring, String[] colors, String[] states) {
+    int[] count = new int[numberOfColors];
+    for (int i = 0; i < numberOfStates; i++) {
+      int color = Arrays.asList(colors).indexOf(coloring.get(states[i]));
+      if (color == -1 || !allows(i, color)) return false;
+      count[color]++;
+    }
+    for (int color = 0; color < numberOfColors; color++) {
+      if (count[color] > capacity[color]) return false;
+    }
+    return true;
+  }
+
+  //  Colours both maps with balanced capacities, one fixed and one forbidden colour, and checks
+  //  the colourings found.
+  //  Usage: java SideConstraints [time limit per run in seconds]
+  public static void main(String[] args) {
+    long timeLimit = args.length > 0 ? Long.parseLong(args[0]) : 60;
+    for (int country = 1; country <= 2; country++) {
+      Map<String, Object> randomInputs =
+          country == 1
+              ? RandomInputGenerator.getRandomInputGeneratorForAustralia(1)
+              : RandomInputGenerator.getRandomInputGeneratorForUnitedStates(1);
+      int[][] nodes = (int[][]) randomInputs.get("adjacencyMatrix");
+      String[] states = (String[]) randomInputs.get("states");
+      String[] colors =
+          country == 1
+              ? RandomInputGenerator.getColorsAustralia()
+              : RandomInputGenerator.getColorsUS();
+
+      SideConstraints constraints = balanced(nodes.length, colors.length);
+      constraints.fixColor(0, 0);
+      constraints.forbidColor(1, 1);
+      System.out.println(
+          (country == 1 ? "Australia" : "United States of America")
+              + ", at most "
+              + constraints.capacity[0]
+              + " states per colour");
+
+      for (int method = 1; method <= 2; method++) {
+        for (int heuristic = 1; heuristic <= 2; heuristic++) {
+          int[] numberOfBacktracks = new int[1];
+          SearchBudget budget = SearchBudget.ofMillis(timeLimit * 1000);
+          long startTime = System.currentTimeMillis();
+          SolveResult result;
+          if (heuristic == 1) {
+            StructureWithoutHeuristics graph =
+                new StructureWithoutHeuristics(nodes, colors, states);
+            graph.setSideConstraints(constraints);
+            result =
+                method == 1
+                    ? graph.forwardCheckingColoring(numberOfBacktracks, budget)
+                    : graph.forwardCheckingSingletonColoring(numberOfBacktracks, budget);
+          } else {
+            StructureWithHeuristics graph = new StructureWithHeuristics(nodes, colors, states);
+            graph.setSideConstraints(constraints);
+            result =
+                method == 1
+                    ? graph.colorWithForwardCheck(numberOfBacktracks, budget)
+                    : graph.colorWithSingleton(numberOfBacktracks, budget);
+          }
+          long duration = System.currentTimeMillis() - startTime;
+          String satisfied =
+              result.status == SolveStatus.SOLVED
+                  ? constraints.isSatisfiedBy(result.coloring, colors, states)
+                      ? ", constraints satisfied"
+                      : ", constraints VIOLATED"
+                  : "";
+          System.out.printf(
+              "  %-17s %-18s %-7s %8d ms %10d backtracks%s%n",
+              method == 1 ? "Forward checking" : "FC + Singleton",
+              heuristic == 1 ? "Without heuristics" : "With heuristics",
+              result.status,
+              duration,
+              result.backtracks,
+              satisfied);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,21 @@
+import java.util.Map;
+
+public class SolveResult {
+  SolveStatus status; // SOLVED, UNSAT or TIMEOUT
+  Map<String, String> coloring; // Complete colouring if solved, else the best partial assignment
+  long nodes; // Number of search nodes visited
+  int backtracks; // Number of backtracks
+
+  public SolveResult(
+      SolveStatus status, Map<String, String> coloring, long nodes, int backtracks) {
+    this.status = status;
+    this.coloring = coloring;
+    this.nodes = nodes;
+    this.backtracks = backtracks;
+  }
+
+  //  Returns the colouring if the problem was solved, else null
+  public Map<String, String> getSolvedColoring() {
+    return status == SolveStatus.SOLVED ? coloring : null;
+  }
+}
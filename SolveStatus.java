@@ -0,0 +1,6 @@
+//  Outcome of a single solve
+public enum SolveStatus {
+  SOLVED, // every state has been coloured
+  UNSAT, // the search space was exhausted without finding a colouring
+  TIMEOUT // the search budget ran out before the search finished
+}
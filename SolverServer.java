@@ -0,0 +1,565 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//  Local HTTP service for graph colouring jobs.
+//  Usage: java SolverServer [port] [solver threads]
+//
+//  POST /solve with the map in the body, either JSON (any content type) or the binary format
+//  (Content-Type: application/octet-stream). Options are query parameters:
+//    method = backtracking | forward-checking | singleton | sat | cutset
+//                                                         (default forward-checking)
+//    heuristics = none | static | adaptive                        (default static)
+//    peeling = true | false, clique = true | false                (default false)
+//    ordering = none | degeneracy | max-cardinality | cuthill-mckee  (default none)
+//    timeLimitMillis = time limit of the solve, 0 for none        (default 0, for batched jobs
+//                      1000 and at most 5000)
+//  JSON body: {"states": ["WA", ...], "colors": ["Red", ...], "adjacency": [[0, 1, ...], ...]}
+//  Binary body (big endian): int magic, int states, int colours, the state and colour names as
+//  modified UTF-8 (DataOutputStream.writeUTF), then one bitset row per state of
+//  (states + 7) / 8 bytes, bit j % 8 of byte j / 8 set when the state borders state j.
+//
+//  Maps with more than MAX_STATES states or MAX_COLORS colours are rejected with 400.
+//
+//  GET /stats returns request counts, cache and batching counters, throughput and latency
+//  percentiles.
+//
+//  Parsed maps are cached by a hash of the body, together with their static orders, k-core and
+//  clique, so a repeated map skips parsing and preprocessing. Jobs on small maps are collected for
+//  a short window and run as one batch on the solver pool; larger jobs go to the pool directly.
+public final class SolverServer {
+  static final int DEFAULT_PORT = 8080;
+  static final int BINARY_MAGIC = 0x43535047; // "CSPG"
+  //  Jobs on maps with at most this many states are batched
+  static final int SMALL_JOB_STATES = 64;
+  static final int MAX_BATCH_SIZE = 32;
+  static final long BATCH_WINDOW_MICROS = 500;
+  //  Batched jobs run one after another in one pool task, so each gets this time limit when none
+  //  is asked for, and at most MAX_BATCHED_TIME_LIMIT_MILLIS
+  static final long BATCHED_TIME_LIMIT_MILLIS = 1000;
+  static final long MAX_BATCHED_TIME_LIMIT_MILLIS = 5000;
+  static final int CACHE_CAPACITY = 256;
+  //  Larger maps are rejected, the parsers build a states x states matrix
+  static final int MAX_STATES = 2048;
+  //  More colours are rejected, the SAT encoding has colours^2 / 2 clauses per state
+  static final int MAX_COLORS = 64;
+  //  Latency percentiles are taken over this many most recent requests
+  static final int LATENCY_SAMPLES = 1024;
+
+  HttpServer server;
+  ExecutorService solverPool;
+  ExecutorService requestThreads;
+  BlockingQueue<Job> smallJobs = new LinkedBlockingQueue<>();
+  Thread batcher;
+  Map<String, Graph> cache; // Guarded by itself, least recently used entries are evicted
+
+  // Statistics
+  long startNanos;
+  AtomicLong requests = new AtomicLong();
+  AtomicLong completed = new AtomicLong();
+  AtomicLong failed = new AtomicLong();
+  AtomicLong cacheHits = new AtomicLong();
+  AtomicLong cacheMisses = new AtomicLong();
+  AtomicLong batches = new AtomicLong();
+  AtomicLong batchedJobs = new AtomicLong();
+  long[] latencies = new long[LATENCY_SAMPLES]; // Microseconds, ring buffer guarded by itself
+  long latencyCount;
+
+  public SolverServer(int port, int threads) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/solve", this::handleSolve);
+    server.createContext("/stats", this::handleStats);
+    solverPool = Executors.newFixedThreadPool(threads);
+    // Request threads only parse and wait for the solver pool
+    requestThreads = Executors.newVirtualThreadPerTaskExecutor();
+    server.setExecutor(requestThreads);
+    cache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Graph> eldest) {
+            return size() > CACHE_CAPACITY;
+          }
+        };
+    batcher = new Thread(this::batchSmallJobs, "job-batcher");
+    batcher.setDaemon(true);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    int threads =
+        args.length > 1
+            ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+    SolverServer solverServer = new SolverServer(port, threads);
+    solverServer.start();
+    System.out.println("Listening on http://localhost:" + solverServer.getPort());
+  }
+
+  public void start() {
+    startNanos = System.nanoTime();
+    batcher.start();
+    server.start();
+  }
+
+  public void stop() {
+    server.stop(0);
+    batcher.interrupt();
+    solverPool.shutdownNow();
+    requestThreads.shutdownNow();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  void handleSolve(HttpExchange exchange) throws IOException {
+    long arrival = System.nanoTime();
+    requests.incrementAndGet();
+    try {
+      if (!exchange.getRequestMethod().equals("POST")) {
+        send(exchange, 405, error("Use POST"));
+        failed.incrementAndGet();
+        return;
+      }
+      byte[] body = exchange.getRequestBody().readAllBytes();
+      String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+      boolean binary = contentType != null && contentType.startsWith("application/octet-stream");
+      Map<String, String> options = parseQuery(exchange.getRequestURI().getRawQuery());
+
+      Job job = new Job(getGraph(body, binary), options);
+      if (job.isBatched()) {
+        smallJobs.add(job);
+      } else {
+        solverPool.execute(job::run);
+      }
+      String response = job.response.get();
+      send(exchange, 200, response);
+      completed.incrementAndGet();
+      recordLatency((System.nanoTime() - arrival) / 1000);
+    } catch (IllegalArgumentException | IOException e) {
+      failed.incrementAndGet();
+      send(exchange, 400, error(e.getMessage()));
+    } catch (ExecutionException e) {
+      failed.incrementAndGet();
+      send(exchange, 500, error(e.getCause().toString()));
+    } catch (InterruptedException e) {
+      failed.incrementAndGet();
+      Thread.currentThread().interrupt();
+      send(exchange, 503, error("Server is shutting down"));
+    }
+  }
+
+  void handleStats(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestMethod().equals("GET")) {
+      send(exchange, 405, error("Use GET"));
+      return;
+    }
+    double uptimeSeconds = (System.nanoTime() - startNanos) / 1e9;
+    long[] samples;
+    synchronized (latencies) {
+      samples = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+    }
+    Arrays.sort(samples);
+    int cacheSize;
+    synchronized (cache) {
+      cacheSize = cache.size();
+    }
+    long batchCount = batches.get();
+
+    StringBuilder json = new StringBuilder("{");
+    json.append("\"uptimeSeconds\":").append(String.format(Locale.ROOT, "%.3f", uptimeSeconds));
+    json.append(",\"requests\":").append(requests.get());
+    json.append(",\"completed\":").append(completed.get());
+    json.append(",\"failed\":").append(failed.get());
+    double throughput = completed.get() / Math.max(uptimeSeconds, 1e-9);
+    json.append(",\"throughputPerSecond\":").append(String.format(Locale.ROOT, "%.3f", throughput));
+    json.append(",\"cacheHits\":").append(cacheHits.get());
+    json.append(",\"cacheMisses\":").append(cacheMisses.get());
+    json.append(",\"cacheSize\":").append(cacheSize);
+    json.append(",\"batches\":").append(batchCount);
+    double averageBatchSize = batchCount == 0 ? 0.0 : batchedJobs.get() / (double) batchCount;
+    json.append(",\"averageBatchSize\":")
+        .append(String.format(Locale.ROOT, "%.3f", averageBatchSize));
+    json.append(",\"latencyMillis\":{");
+    json.append("\"p50\":").append(percentile(samples, 0.50));
+    json.append(",\"p90\":").append(percentile(samples, 0.90));
+    json.append(",\"p99\":").append(percentile(samples, 0.99));
+    json.append(",\"max\":").append(percentile(samples, 1.0));
+    json.append("}}");
+    send(exchange, 200, json.toString());
+  }
+
+  //  Latency percentile of the sorted samples in milliseconds
+  static String percentile(long[] sortedMicros, double fraction) {
+    if (sortedMicros.length == 0) return "0.000";
+    int index = (int) Math.ceil(fraction * sortedMicros.length) - 1;
+    return String.format(Locale.ROOT, "%.3f", sortedMicros[Math.max(0, index)] / 1000.0);
+  }
+
+  void recordLatency(long micros) {
+    synchronized (latencies) {
+      latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = micros;
+    }
+  }
+
+  //  Collects small jobs for up to BATCH_WINDOW_MICROS and hands them to the pool as one task
+  void batchSmallJobs() {
+    List<Job> batch = new ArrayList<>();
+    try {
+      while (true) {
+        batch.add(smallJobs.take());
+        long deadline = System.nanoTime() + BATCH_WINDOW_MICROS * 1000;
+        while (batch.size() < MAX_BATCH_SIZE) {
+          Job next = smallJobs.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) break;
+          batch.add(next);
+        }
+        List<Job> jobs = List.copyOf(batch);
+        batch.clear();
+        batches.incrementAndGet();
+        batchedJobs.addAndGet(jobs.size());
+        solverPool.execute(
+            () -> {
+              for (Job job : jobs) job.run();
+            });
+      }
+    } catch (InterruptedException e) {
+      // Server stopped
+    }
+  }
+
+  //  Returns the parsed map of the body, from the cache if the same body was seen before
+  Graph getGraph(byte[] body, boolean binary) throws IOException {
+    String key = contentHash(body, binary);
+    synchronized (cache) {
+      Graph graph = cache.get(key);
+      if (graph != null) {
+        cacheHits.incrementAndGet();
+        return graph;
+      }
+    }
+    cacheMisses.incrementAndGet();
+    Graph graph = binary ? parseBinary(body) : parseJson(body);
+    synchronized (cache) {
+      Graph existing = cache.putIfAbsent(key, graph);
+      return existing != null ? existing : graph;
+    }
+  }
+
+  static String contentHash(byte[] body, boolean binary) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update((byte) (binary ? 1 : 0));
+      return HexFormat.of().formatHex(digest.digest(body));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static Graph parseJson(byte[] body) {
+    if (!(Json.parse(new String(body, StandardCharsets.UTF_8)) instanceof Map<?, ?> object)) {
+      throw new IllegalArgumentException("Expected a JSON object");
+    }
+    String[] states = toStrings(object.get("states"), "states");
+    String[] colors = toStrings(object.get("colors"), "colors");
+    checkSize(states.length, colors.length);
+    if (!(object.get("adjacency") instanceof List<?> rows) || rows.size() != states.length) {
+      throw new IllegalArgumentException("adjacency must have one row per state");
+    }
+    int[][] nodes = new int[states.length][states.length];
+    for (int i = 0; i < states.length; i++) {
+      if (!(rows.get(i) instanceof List<?> row) || row.size() != states.length) {
+        throw new IllegalArgumentException("adjacency row " + i + " must have one entry per state");
+      }
+      for (int j = 0; j < states.length; j++) {
+        if (!(row.get(j) instanceof Long cell) || (cell != 0 && cell != 1)) {
+          throw new IllegalArgumentException("adjacency entries must be 0 or 1");
+        }
+        nodes[i][j] = cell.intValue();
+      }
+    }
+    return new Graph(nodes, colors, states);
+  }
+
+  //  Rejects maps too large for the adjacency matrix or the SAT encoding
+  static void checkSize(int numberOfStates, int numberOfColors) {
+    if (numberOfStates > MAX_STATES) {
+      throw new IllegalArgumentException("At most " + MAX_STATES + " states");
+    }
+    if (numberOfColors > MAX_COLORS) {
+      throw new IllegalArgumentException("At most " + MAX_COLORS + " colours");
+    }
+  }
+
+  static String[] toStrings(Object value, String name) {
+    if (!(value instanceof List<?> list) || list.isEmpty()) {
+      throw new IllegalArgumentException(name + " must be a non-empty array of strings");
+    }
+    String[] strings = new String[list.size()];
+    for (int i = 0; i < strings.length; i++) {
+      if (!(list.get(i) instanceof String string)) {
+        throw new IllegalArgumentException(name + " must be a non-empty array of strings");
+      }
+      strings[i] = string;
+    }
+    return strings;
+  }
+
+  static Graph parseBinary(byte[] body) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+    if (body.length < 12 || in.readInt() != BINARY_MAGIC) {
+      throw new IllegalArgumentException("Not a binary colouring job");
+    }
+    int numberOfStates = in.readInt();
+    int numberOfColors = in.readInt();
+    if (numberOfStates <= 0
+        || numberOfColors <= 0
+        || numberOfStates > body.length
+        || numberOfColors > body.length) {
+      throw new IllegalArgumentException("Invalid number of states or colours");
+    }
+    checkSize(numberOfStates, numberOfColors);
+    String[] states = new String[numberOfStates];
+    for (int i = 0; i < numberOfStates; i++) states[i] = in.readUTF();
+    String[] colors = new String[numberOfColors];
+    for (int i = 0; i < numberOfColors; i++) colors[i] = in.readUTF();
+
+    int[][] nodes = new int[numberOfStates][numberOfStates];
+    byte[] row = new byte[(numberOfStates + 7) / 8];
+    for (int i = 0; i < numberOfStates; i++) {
+      in.readFully(row);
+      for (int j = 0; j < numberOfStates; j++) nodes[i][j] = (row[j >> 3] >> (j & 7)) & 1;
+    }
+    return new Graph(nodes, colors, states);
+  }
+
+  static Map<String, String> parseQuery(String query) {
+    Map<String, String> options = new HashMap<>();
+    if (query == null) return options;
+    for (String pair : query.split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals <= 0) continue;
+      options.put(
+          URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+          URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+    }
+    return options;
+  }
+
+  static void send(HttpExchange exchange, int code, String json) throws IOException {
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  static String error(String message) {
+    return "{\"error\":" + Json.quote(String.valueOf(message)) + "}";
+  }
+
+  //  A parsed map with its preprocessing, shared by every job on the same map
+  static class Graph {
+    int[][] nodes;
+    String[] colors;
+    String[] states;
+
+    // Computed on first use, guarded by this
+    ProblemModel model; // Shared by every solve of the map, with its pool of search contexts
+    KCorePeeling kCore;
+    int[][] coreStructure;
+    String[] coreStates;
+    ProblemModel coreModel;
+    int[][] cliques = new int[2][]; // Clique of the whole map and of the core
+    int[][] cliqueColors = new int[2][]; // Fixed colours of those cliques
+    Graph[] ordered = new Graph[StaticOrdering.Strategy.values().length]; // Relabelled maps
+
+    Graph(int[][] nodes, String[] colors, String[] states) {
+      this.nodes = nodes;
+      this.colors = colors;
+      this.states = states;
+    }
+
+    synchronized ProblemModel getModel() {
+      if (model == null) model = new ProblemModel(nodes, colors, states);
+      return model;
+    }
+
+    synchronized ProblemModel getCoreModel() {
+      if (coreModel == null) {
+        getKCore();
+        coreModel = new ProblemModel(coreStructure, colors, coreStates);
+      }
+      return coreModel;
+    }
+
+    synchronized KCorePeeling getKCore() {
+      if (kCore == null) {
+        kCore = new KCorePeeling(nodes, colors.length);
+        coreStructure = kCore.getCoreStructure();
+        coreStates = kCore.getCoreStates(states);
+      }
+      return kCore;
+    }
+
+    //  The map relabelled in a static order, with preprocessing of its own
+    synchronized Graph getOrdered(StaticOrdering.Strategy strategy) {
+      int index = strategy.ordinal();
+      if (ordered[index] == null) {
+        StaticOrdering ordering = new StaticOrdering(nodes, strategy);
+        ordered[index] =
+            new Graph(ordering.getOrderedStructure(), colors, ordering.getOrderedStates(states));
+      }
+      return ordered[index];
+    }
+
+    //  Large clique of the whole map or of its k-core
+    synchronized int[] getClique(boolean peeled) {
+      int index = peeled ? 1 : 0;
+      if (cliques[index] == null) {
+        if (peeled) getKCore();
+        CliqueBound bound = new CliqueBound(peeled ? coreStructure : nodes);
+        cliques[index] = bound.findClique(CliqueBound.DEFAULT_NODE_LIMIT);
+        cliqueColors[index] = bound.getFixedColors(cliques[index]);
+      }
+      return cliques[index];
+    }
+
+    //  Colours fixed by the clique of getClique, read only
+    synchronized int[] getCliqueColors(boolean peeled) {
+      getClique(peeled);
+      return cliqueColors[peeled ? 1 : 0];
+    }
+  }
+
+  //  One request: a map, the options to solve it with and the JSON response once solved
+  static class Job {
+    Graph graph;
+    int method;
+    int heuristic;
+    boolean peeling;
+    boolean clique;
+    StaticOrdering.Strategy ordering; // null to keep the order of the request
+    long timeLimitMillis;
+    CompletableFuture<String> response = new CompletableFuture<>();
+
+    Job(Graph graph, Map<String, String> options) {
+      this.graph = graph;
+      String methodName = options.getOrDefault("method", "forward-checking");
+      method =
+          List.of("backtracking", "forward-checking", "singleton", "sat", "cutset")
+              .indexOf(methodName);
+      if (method == -1) throw new IllegalArgumentException("Unknown method " + methodName);
+      String heuristicName = options.getOrDefault("heuristics", "static");
+      heuristic = List.of("none", "static", "adaptive").indexOf(heuristicName) + 1;
+      if (heuristic == 0) throw new IllegalArgumentException("Unknown heuristics " + heuristicName);
+      peeling = Boolean.parseBoolean(options.getOrDefault("peeling", "false"));
+      clique = Boolean.parseBoolean(options.getOrDefault("clique", "false"));
+      String orderingName = options.getOrDefault("ordering", "none");
+      int orderingIndex =
+          List.of("none", "degeneracy", "max-cardinality", "cuthill-mckee").indexOf(orderingName);
+      if (orderingIndex == -1) {
+        throw new IllegalArgumentException("Unknown ordering " + orderingName);
+      }
+      if (orderingIndex > 0) ordering = StaticOrdering.Strategy.values()[orderingIndex - 1];
+      try {
+        timeLimitMillis = Long.parseLong(options.getOrDefault("timeLimitMillis", "0"));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid timeLimitMillis");
+      }
+      if (timeLimitMillis < 0) throw new IllegalArgumentException("Invalid timeLimitMillis");
+      if (isBatched()) {
+        timeLimitMillis =
+            timeLimitMillis == 0
+                ? BATCHED_TIME_LIMIT_MILLIS
+                : Math.min(timeLimitMillis, MAX_BATCHED_TIME_LIMIT_MILLIS);
+      }
+    }
+
+    //  Small jobs are batched, larger ones get a pool task of their own
+    boolean isBatched() {
+      return graph.states.length <= SMALL_JOB_STATES;
+    }
+
+    //  Solves the job the same way ConstraintSatisfactionSolver runs one configuration
+    void run() {
+      try {
+        long startTime = System.currentTimeMillis();
+        int[] numberOfBacktracks = new int[1];
+        SearchBudget budget = SearchBudget.ofMillis(timeLimitMillis);
+        // Colourings are keyed by state name, so a relabelled map needs no translation back
+        Graph searchGraph = ordering == null ? graph : graph.getOrdered(ordering);
+
+        KCorePeeling kCore = peeling ? searchGraph.getKCore() : null;
+        ProblemModel model = peeling ? searchGraph.getCoreModel() : searchGraph.getModel();
+
+        int[] fixedColors = null;
+        boolean cliqueTooLarge = false;
+        if (clique) {
+          int[] largeClique = searchGraph.getClique(peeling);
+          cliqueTooLarge = largeClique.length > searchGraph.colors.length;
+          if (!cliqueTooLarge) fixedColors = searchGraph.getCliqueColors(peeling);
+        }
+
+        SolveResult result;
+        if (cliqueTooLarge) {
+          result = new SolveResult(SolveStatus.UNSAT, new HashMap<>(), 0, 0);
+        } else {
+          result =
+              ConstraintSatisfactionSolver.runAlgorithm(
+                  method,
+                  heuristic,
+                  model,
+                  fixedColors,
+                  numberOfBacktracks,
+                  budget);
+        }
+        if (kCore != null) result = kCore.extend(result, searchGraph.colors, searchGraph.states);
+
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"status\":").append(Json.quote(result.status.toString()));
+        json.append(",\"coloring\":{");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : result.coloring.entrySet()) {
+          if (!first) json.append(',');
+          first = false;
+          json.append(Json.quote(entry.getKey())).append(':').append(Json.quote(entry.getValue()));
+        }
+        json.append("},\"nodes\":").append(result.nodes);
+        json.append(",\"backtracks\":").append(result.backtracks);
+        json.append(",\"solveMillis\":").append(System.currentTimeMillis() - startTime);
+        json.append('}');
+        response.complete(json.toString());
+      } catch (Throwable e) {
+        // Errors too, or the request and the rest of its batch would wait forever
+        response.completeExceptionally(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+//  Preprocessor that relabels the states in a good static order before the search.
+//  The static-order searches (StructureWithoutHeuristics, CheckpointedSearch) assign the states in
+//  index order, which is otherwise the random order of RandomInputGenerator, so the same map can
+//  take milliseconds on one run and close to a minute on the next. The graph is relabelled once;
+//  colourings are keyed by state name, so they need no translation back, and the clique and
+//  k-core are computed on the relabelled map.
+//  Borders are those of ProblemModel.neighbours.
+public final class StaticOrdering {
+  public enum Strategy {
+    //  Smallest-last: the states of the densest core come first
+    DEGENERACY,
+    //  Maximum cardinality search: next is the state with the most states already ordered next to
+    //  it
+    MAX_CARDINALITY,
+    //  Breadth first from a peripheral state, neighbours by increasing degree. Keeps bordering
+    //  states close together in the order (small bandwidth)
+    CUTHILL_MCKEE
+  }
+
+  int[][] nodes;
+  int[][] adjacency; // Neighbour lists, from ProblemModel.neighbours
+  int[] order; // order[p] is the state at position p
+
+  public StaticOrdering(int[][] nodes, Strategy strategy) {
+    this.nodes = nodes;
+    this.adjacency = ProblemModel.neighbours(nodes);
+    switch (strategy) {
+      case DEGENERACY:
+        degeneracyOrder();
+        break;
+      case MAX_CARDINALITY:
+        maxCardinalityOrder();
+        break;
+      default:
+        cuthillMcKeeOrder();
+        break;
+    }
+  }
+
+  //  Removes a state of minimum remaining degree until none is left, using the degree buckets of
+  //  Batagelj-Zaversnik as KCorePeeling does, and orders the states in reverse removal order
+  void degeneracyOrder() {
+    int n = adjacency.length;
+    int[] degree = new int[n];
+    int maxDegree = 0;
+    for (int i = 0; i < n; i++) {
+      degree[i] = adjacency[i].length;
+      maxDegree = Math.max(maxDegree, degree[i]);
+    }
+
+    // bin[d] is the first position of degree d in the sorted order
+    int[] bin = new int[maxDegree + 1];
+    for (int i = 0; i < n; i++) bin[degree[i]]++;
+    int start = 0;
+    for (int d = 0; d <= maxDegree; d++) {
+      int count = bin[d];
+      bin[d] = start;
+      start += count;
+    }
+    int[] removal = new int[n];
+    int[] removalPosition = new int[n];
+    for (int i = 0; i < n; i++) {
+      removalPosition[i] = bin[degree[i]]++;
+      removal[removalPosition[i]] = i;
+    }
+    for (int d = maxDegree; d > 0; d--) bin[d] = bin[d - 1];
+    bin[0] = 0;
+
+    for (int p = 0; p < n; p++) {
+      int state = removal[p];
+      // Moving each remaining neighbour one bucket down
+      for (int neighbour : adjacency[state]) {
+        if (degree[neighbour] > degree[state]) {
+          int neighbourDegree = degree[neighbour];
+          int firstPosition = bin[neighbourDegree];
+          int firstState = removal[firstPosition];
+          if (firstState != neighbour) {
+            removal[removalPosition[neighbour]] = firstState;
+            removalPosition[firstState] = removalPosition[neighbour];
+            removal[firstPosition] = neighbour;
+            removalPosition[neighbour] = firstPosition;
+          }
+          bin[neighbourDegree]++;
+          degree[neighbour]--;
+        }
+      }
+    }
+
+    order = new int[n];
+    for (int p = 0; p < n; p++) order[p] = removal[n - 1 - p];
+  }
+
+  //  Repeatedly takes the unordered state with the most ordered neighbours, ties broken by degree
+  void maxCardinalityOrder() {
+    int n = adjacency.length;
+    order = new int[n];
+    int[] orderedNeighbours = new int[n];
+    boolean[] ordered = new boolean[n];
+    for (int p = 0; p < n; p++) {
+      int best = -1;
+      for (int i = 0; i < n; i++) {
+        if (ordered[i]) continue;
+        if (best == -1
+            || orderedNeighbours[i] > orderedNeighbours[best]
+            || (orderedNeighbours[i] == orderedNeighbours[best]
+                && adjacency[i].length > adjacency[best].length)) {
+          best = i;
+        }
+      }
+      order[p] = best;
+      ordered[best] = true;
+      for (int neighbour : adjacency[best]) orderedNeighbours[neighbour]++;
+    }
+  }
+
+  //  Cuthill-McKee on every connected component
+  void cuthillMcKeeOrder() {
+    int n = adjacency.length;
+    order = new int[n];
+    boolean[] visited = new boolean[n];
+    int size = 0;
+    while (size < n) {
+      int root = -1;
+      for (int i = 0; i < n; i++) {
+        if (!visited[i] && (root == -1 || adjacency[i].length < adjacency[root].length)) root = i;
+      }
+      root = peripheralState(root, visited);
+      visited[root] = true;
+      int head = size;
+      order[size++] = root;
+      while (head < size) {
+        int state = order[head++];
+        int first = size;
+        for (int neighbour : adjacency[state]) {
+          if (!visited[neighbour]) {
+            visited[neighbour] = true;
+            order[size++] = neighbour;
+          }
+        }
+        // Neighbours by increasing degree, insertion sort since lists are short
+        for (int i = first + 1; i < size; i++) {
+          int neighbour = order[i];
+          int j = i - 1;
+          while (j >= first && adjacency[order[j]].length > adjacency[neighbour].length) {
+            order[j + 1] = order[j];
+            j--;
+          }
+          order[j + 1] = neighbour;
+        }
+      }
+    }
+  }
+
+  //  Pseudo-peripheral state of the component of start (George-Liu): restarts the breadth first
+  //  search from a smallest degree state of the last level while the eccentricity grows
+  int peripheralState(int start, boolean[] visited) {
+    int n = adjacency.length;
+    int[] level = new int[n];
+    int[] queue = new int[n];
+    int eccentricity = -1;
+    while (true) {
+      Arrays.fill(level, -1);
+      level[start] = 0;
+      int head = 0;
+      int size = 0;
+      queue[size++] = start;
+      while (head < size) {
+        int state = queue[head++];
+        for (int neighbour : adjacency[state]) {
+          if (!visited[neighbour] && level[neighbour] == -1) {
+            level[neighbour] = level[state] + 1;
+            queue[size++] = neighbour;
+          }
+        }
+      }
+      int depth = level[queue[size - 1]];
+      if (depth <= eccentricity) return start;
+      eccentricity = depth;
+      int next = start;
+      for (int i = size - 1; i >= 0 && level[queue[i]] == depth; i--) {
+        if (next == start || adjacency[queue[i]].length < adjacency[next].length) next = queue[i];
+      }
+      if (next == start) return start;
+      start = next;
+    }
+  }
+
+  //  Returns the adjacency matrix with the states relabelled in the new order
+  public int[][] getOrderedStructure() {
+    int n = order.length;
+    int[][] ordered = new int[n][n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) ordered[i][j] = nodes[order[i]][order[j]];
+    }
+    return ordered;
+  }
+
+  //  Returns the names of the states in the new order
+  public String[] getOrderedStates(String[] states) {
+    String[] ordered = new String[order.length];
+    for (int p = 0; p < order.length; p++) ordered[p] = states[order[p]];
+    return ordered;
+  }
+
+  //  Largest index distance between two bordering states
+  public static int bandwidth(int[][] nodes) {
+    int bandwidth = 0;
+    int[][] adjacency = ProblemModel.neighbours(nodes);
+    for (int i = 0; i < nodes.length; i++) {
+      for (int j : adjacency[i]) bandwidth = Math.max(bandwidth, j - i);
+    }
+    return bandwidth;
+  }
+
+  //  Runs forward checking without heuristics on the same seeded maps in the random input order
+  //  and in each static order, and prints the spread of the running times.
+  //  Usage: java StaticOrdering [seeds] [time limit per run in seconds]
+  public static void main(String[] args) {
+    int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    long timeLimit = args.length > 1 ? Long.parseLong(args[1]) : 10;
+    String[] colors = RandomInputGenerator.getColorsUS();
+    System.out.printf(
+        "United States of America, %d seeds, forward checking without heuristics%n", seeds);
+    System.out.printf(
+        "%-16s %10s %10s %10s %9s %14s%n",
+        "Order", "Median ms", "Max ms", "Timeouts", "Bandwidth", "Max backtracks");
+
+    for (int s = -1; s < Strategy.values().length; s++) {
+      Strategy strategy = s == -1 ? null : Strategy.values()[s];
+      List<Long> durations = new ArrayList<>();
+      int timeouts = 0;
+      int maxBandwidth = 0;
+      int maxBacktracks = 0;
+      for (int seed = 1; seed <= seeds; seed++) {
+        Map<String, Object> randomInputs =
+            RandomInputGenerator.getRandomInputGeneratorForUnitedStates(seed);
+        int[][] nodes = (int[][]) randomInputs.get("adjacencyMatrix");
+        String[] states = (String[]) randomInputs.get("states");
+
+        long startTime = System.currentTimeMillis();
+        if (strategy != null) {
+          StaticOrdering ordering = new StaticOrdering(nodes, strategy);
+          nodes = ordering.getOrderedStructure();
+          states = ordering.getOrderedStates(states);
+        }
+        maxBandwidth = Math.max(maxBandwidth, bandwidth(nodes));
+
+        int[] numberOfBacktracks = new int[1];
+        SearchBudget budget = SearchBudget.ofMillis(timeLimit * 1000);
+        SolveResult result =
+            new StructureWithoutHeuristics(nodes, colors, states)
+                .forwardCheckingColoring(numberOfBacktracks, budget);
+        durations.add(System.currentTimeMillis() - startTime);
+        if (result.status == SolveStatus.TIMEOUT) timeouts++;
+        maxBacktracks = Math.max(maxBacktracks, numberOfBacktracks[0]);
+      }
+      durations.sort(null);
+      System.out.printf(
+          "%-16s %10d %10d %10d %9d %14d%n",
+          strategy == null ? "Random" : strategy,
+          durations.get(durations.size() / 2),
+          durations.getLast(),
+          timeouts,
+          maxBandwidth,
+          maxBacktracks);
+    }
+  }
+}
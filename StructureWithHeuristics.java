@@ -1,51 +1,122 @@
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
+//    Search context for the searches with heuristics: the map and its neighbour lists come from a
+//    shared ProblemModel, the fields below are the state of the solve in progress
 public class StructureWithHeuristics {
+  ProblemModel model;
   int[][] nodes;
   String[] colors;
   String[] states;
   int numberOfBacktracks;
+  SearchBudget budget = SearchBudget.unlimited();
+  int[] bestColorMapping; // Deepest consistent partial assignment seen by the current solve
+  int bestLevel;
+  int[][] adjacency; // adjacency[v] lists the regions v borders, from the model
+  //    valueImpact[v][c] counts the unassigned neighbours of v that still have colour c,
+  //    i.e. how many neighbours would lose c if v took it. Kept up to date on every domain change.
+  int[][] valueImpact;
+  int[][] valueOrders; // valueOrders[level] holds the colors tried at that level, in order
+  //    Adaptive dom/wdeg ordering: every border carries a weight that grows each time it wipes
+  //    out a domain. Weights stay on the instance, so later solves keep what was learned.
+  boolean adaptiveOrdering;
+  int[][] edgeIds; // edgeIds[v][j] is the border between v and adjacency[v][j]
+  int[] edgeWeights;
+  //    Border on which singleton propagation failed, failedRegion -1 if it did not fail in
+  //    avoidSingleton; set there so the failing border is weighted, not the one that started it
+  int failedRegion = -1;
+  int failedIndex;
+  SideConstraints constraints; // Fixed, forbidden and capacity-limited colours, null if none
+  int[] colorCounts; // Assigned states of each colour, for the capacities
+  int[] forcedCounts; // Scratch for the counting bound of the capacities
+  //    domains[v] holds the colors v can still take and unassigned the regions without a color,
+  //    as reversible sparse sets so the heuristics only visit what is left. Reused by later solves
+  ReversibleSparseSet[] domains;
+  ReversibleSparseSet unassigned;
+  //    Colors taken out of the domains, packed as region * colors + color, latest last. A search
+  //    level undoes its removals by restoring down to the size it started with
+  int[] trail;
+  int trailSize;
 
   public StructureWithHeuristics(int[][] nodes, String[] colors, String[] states) {
-    this.nodes = nodes;
-    this.colors = colors;
-    this.states = states;
+    this(nodes, colors, states, false);
+  }
+
+  public StructureWithHeuristics(
+      int[][] nodes, String[] colors, String[] states, boolean adaptiveOrdering) {
+    this(new ProblemModel(nodes, colors, states), adaptiveOrdering);
+  }
+
+  //    Context for a model shared with other solves, see ProblemModel.acquireWithHeuristics
+  public StructureWithHeuristics(ProblemModel model, boolean adaptiveOrdering) {
+    this.model = model;
+    this.nodes = model.nodes;
+    this.colors = model.colors;
+    this.states = model.states;
+    this.colorCounts = new int[colors.length];
+    this.forcedCounts = new int[colors.length];
+    this.trail = new int[nodes.length * colors.length];
+    this.adaptiveOrdering = adaptiveOrdering;
+    this.adjacency = model.adjacency;
+    this.edgeIds = model.edgeIds;
+    this.edgeWeights = new int[model.numberOfEdges];
+    Arrays.fill(edgeWeights, 1);
+  }
+
+  //    Fixes the colours of some states before the search. Side constraints set before are copied
+  //    first, so the caller's constraints are left as they are
+  public void fixColors(int[] fixedColors) {
+    constraints =
+        constraints == null
+            ? new SideConstraints(nodes.length, colors.length)
+            : constraints.copy();
+    constraints.fixColors(fixedColors);
+  }
+
+  //    Fixes the colours of a clique's states, unless the side constraints tell colours apart,
+  //    in which case the arbitrary colours could exclude every solution.
+  //    Returns true if they were fixed
+  public boolean fixCliqueColors(int[] cliqueColors) {
+    if (constraints != null && !constraints.isColorSymmetric()) return false;
+    fixColors(cliqueColors);
+    return true;
+  }
+
+  //    Adds fixed, forbidden and capacity-limited colours to the search. The constraints are only
+  //    read, so several contexts may share them
+  public void setSideConstraints(SideConstraints constraints) {
+    this.constraints = constraints;
   }
 
   //    Checks if color is a valid to be assigned to the node.
   //    Returns true if valid else false
   public boolean isValidColor(int node, int[] colorMapping, int colorIndex) {
-    for (int i = 0; i < nodes.length; i++) {
-      if (nodes[node][i] == 1 && colorMapping[i] == colorIndex) return false;
+    if (constraints != null
+        && (!constraints.allows(node, colorIndex) || constraints.isFull(colorIndex, colorCounts)))
+      return false;
+    for (int neighbour : adjacency[node]) {
+      if (colorMapping[neighbour] == colorIndex) return false;
     }
     return true;
   }
 
-  //    Returns the adjacentRegions of a state
+  //    Returns the adjacentRegions of a state, read only
   List<Integer> getAdjacentRegions(int node) {
-    List<Integer> list = new ArrayList<>();
-    for (int i = 0; i < this.nodes[node].length; i++) {
-      if (nodes[node][i] == 1) list.add(i);
-    }
-    return list;
+    return model.neighbourLists.get(node);
   }
 
   //    Computes the MRV Heuristic for next available state.
-  public int computeMRV(Map<Integer, List<Integer>> domainMapping, int[] colorMapping) {
+  //    The unassigned set is in no particular order, so ties go to the lowest index
+  public int computeMRV() {
     int size = Integer.MAX_VALUE;
     int nextState = -1;
-    for (int i = 0; i < this.nodes.length; i++) {
-      if (colorMapping[i] == -1 && size > domainMapping.get(i).size()) {
-        size = domainMapping.get(i).size();
+    for (int p = 0; p < unassigned.size(); p++) {
+      int i = unassigned.get(p);
+      int domainSize = domains[i].size();
+      if (domainSize < size || (domainSize == size && i < nextState)) {
+        size = domainSize;
         nextState = i;
       }
     }
@@ -53,31 +124,28 @@ public class StructureWithHeuristics {
   }
 
   //    Computes the Degree Heuristic to compute next available state
-  public int computeDegreeHeuristic(int[] colorMapping) {
+  public int computeDegreeHeuristic() {
     int maxDegree = -1;
     int nextState = -1;
-    for (int i = 0; i < this.nodes.length; i++) {
-      if (colorMapping[i] == -1 && getAdjacentRegions(i).size() > maxDegree) {
-        maxDegree = getAdjacentRegions(i).size();
+    for (int p = 0; p < unassigned.size(); p++) {
+      int i = unassigned.get(p);
+      if (adjacency[i].length > maxDegree || (adjacency[i].length == maxDegree && i < nextState)) {
+        maxDegree = adjacency[i].length;
         nextState = i;
       }
     }
     return nextState;
   }
 
-  //    Computes the Heuristic LCV and returns the next state
-  public int computeLCV(int[] colorMapping) {
+  //    Tie-breaker for the next state: the unassigned state bordered by the fewest regions.
+  //    Values themselves are ordered by least constraining value, see orderValues
+  public int computeLCV() {
     int minimum = 0;
     int nextState = -1;
-    int temp = 0;
-    for (int i = 0; i < this.nodes.length; i++) {
-      if (colorMapping[i] != -1) continue;
-      for (int[] node : this.nodes) {
-        if (node[i] == 0) {
-          temp = temp + 1;
-        }
-      }
-      if (temp > minimum) {
+    for (int p = 0; p < unassigned.size(); p++) {
+      int i = unassigned.get(p);
+      int temp = model.nonNeighbourCount[i];
+      if (temp > minimum || (temp == minimum && nextState != -1 && i < nextState)) {
         minimum = temp;
         nextState = i;
       }
@@ -85,54 +153,248 @@ public class StructureWithHeuristics {
     return nextState;
   }
 
+  //    Sums the weights of the borders between the node and unassigned regions
+  int weightedDegree(int node, int[] colorMapping) {
+    int weightedDegree = 0;
+    for (int j = 0; j < adjacency[node].length; j++) {
+      if (colorMapping[adjacency[node][j]] == -1) weightedDegree += edgeWeights[edgeIds[node][j]];
+    }
+    return weightedDegree;
+  }
+
+  //    Computes the dom/wdeg heuristic: the unassigned state with the smallest ratio of domain
+  //    size to weighted degree
+  public int computeDomWdeg(int[] colorMapping) {
+    long bestSize = 0;
+    long bestWeight = 0;
+    int nextState = -1;
+    for (int p = 0; p < unassigned.size(); p++) {
+      int i = unassigned.get(p);
+      long size = domains[i].size();
+      long weight = Math.max(1, weightedDegree(i, colorMapping));
+      // size / weight < bestSize / bestWeight without dividing
+      if (nextState == -1
+          || size * bestWeight < bestSize * weight
+          || (size * bestWeight == bestSize * weight && i < nextState)) {
+        bestSize = size;
+        bestWeight = weight;
+        nextState = i;
+      }
+    }
+    return nextState;
+  }
+
+  //    Bumps the weight of the border whose forward check wiped out a domain
+  void recordWipeout(int node, int j) {
+    edgeWeights[edgeIds[node][j]]++;
+  }
+
   //    Returns the next state computed based on the three heuristics
-  public int getNextState(Map<Integer, List<Integer>> domainMapping, int[] colorMapping) {
-    int nextState = computeMRV(domainMapping, colorMapping);
-    if (nextState == -1) nextState = computeDegreeHeuristic(colorMapping);
-    if (nextState == -1) nextState = computeLCV(colorMapping);
+  public int getNextState(int[] colorMapping) {
+    if (adaptiveOrdering) return computeDomWdeg(colorMapping);
+    int nextState = computeMRV();
+    if (nextState == -1) nextState = computeDegreeHeuristic();
+    if (nextState == -1) nextState = computeLCV();
     return nextState;
   }
 
-  //    Generates the domain for all the regions.
-  //    Returns the map
-  public Map<Integer, List<Integer>> generateDomainMap() {
-    Map<Integer, List<Integer>> domainMapping = new HashMap<>();
+  //    Counts for every region and colour how many unassigned neighbours still have that colour
+  void initValueImpact() {
+    if (valueImpact == null) valueImpact = new int[this.nodes.length][colors.length];
+    if (valueOrders == null) valueOrders = new int[this.nodes.length][colors.length];
+    for (int[] impact : valueImpact) Arrays.fill(impact, 0);
     for (int i = 0; i < this.nodes.length; i++) {
-      List<Integer> list =
-          IntStream.rangeClosed(0, colors.length - 1).boxed().collect(Collectors.toList());
-      domainMapping.put(i, list);
+      for (int neighbour : adjacency[i]) {
+        ReversibleSparseSet domain = domains[neighbour];
+        for (int p = 0; p < domain.size(); p++) valueImpact[i][domain.get(p)]++;
+      }
     }
-    return domainMapping;
   }
 
-  //    Solves the coloring problem using backtracking.
-  //    Returns true if successfully assigned else false.
-  public Map<String, String> colorWithBacktracking(int[] totalBackTrackCount) {
-    int[] colorMapping = new int[this.nodes.length];
-    Arrays.fill(colorMapping, -1);
-    int level = 0;
-    Map<Integer, List<Integer>> domainMapping = generateDomainMap();
-    if (!colorWithBacktrackingUtil(colorMapping, domainMapping, 0, level)) return null;
+  //    Writes the domain of the node into values ordered by least constraining value first, ties
+  //    by color, and returns its size.
+  //    Reads the impact counters only, so it never rescans the graph
+  int orderValues(int node, int[] values) {
+    ReversibleSparseSet domain = domains[node];
+    int size = domain.size();
+    int[] impact = valueImpact[node];
+    for (int i = 0; i < size; i++) {
+      int color = domain.get(i);
+      int j = i - 1;
+      while (j >= 0
+          && (impact[values[j]] > impact[color]
+              || (impact[values[j]] == impact[color] && values[j] > color))) {
+        values[j + 1] = values[j];
+        j--;
+      }
+      values[j + 1] = color;
+    }
+    return size;
+  }
+
+  //    Assigns the color to the node. The node no longer counts against its neighbours' values
+  void assign(int[] colorMapping, int node, int color) {
+    colorMapping[node] = color;
+    unassigned.remove(node);
+    ReversibleSparseSet domain = domains[node];
+    for (int p = 0; p < domain.size(); p++) {
+      for (int region : adjacency[node]) valueImpact[region][domain.get(p)]--;
+    }
+  }
+
+  //    Undoes assign
+  void unassign(int[] colorMapping, int node) {
+    colorMapping[node] = -1;
+    unassigned.restore(node);
+    ReversibleSparseSet domain = domains[node];
+    for (int p = 0; p < domain.size(); p++) {
+      for (int region : adjacency[node]) valueImpact[region][domain.get(p)]++;
+    }
+  }
+
+  //    Removes the color from the domain of an unassigned region, updating the impact counters.
+  //    Returns false if the color was not in the domain
+  boolean removeValue(int region, int color) {
+    if (!domains[region].remove(color)) return false;
+    for (int other : adjacency[region]) valueImpact[other][color]--;
+    return true;
+  }
+
+  //    Puts the color back into the domain of an unassigned region, updating the impact counters
+  void restoreValue(int region, int color) {
+    if (!domains[region].restore(color)) return;
+    for (int other : adjacency[region]) valueImpact[other][color]++;
+  }
+
+  //    Returns true if the side constraints put a limit on some colour
+  boolean hasCapacities() {
+    return constraints != null && constraints.hasCapacities;
+  }
+
+  //    Removes the color from the domain of an unassigned region and records it on the trail.
+  //    Returns false if the color was not in the domain
+  boolean pruneValue(int region, int color) {
+    if (!removeValue(region, color)) return false;
+    trail[trailSize++] = region * colors.length + color;
+    return true;
+  }
+
+  //    Removes the color from the domain of an unassigned region and records it on the trail.
+  //    With singleton propagation a region that is left with one color passes it on to its
+  //    neighbours. Returns false if a domain was wiped out
+  boolean removeColor(int[] colorMapping, int region, int color, boolean singleton) {
+    if (!pruneValue(region, color)) return true;
+    ReversibleSparseSet domain = domains[region];
+    if (domain.isEmpty()) return false;
+    return !singleton || domain.size() > 1 || avoidSingleton(region, colorMapping);
+  }
+
+  //    Puts the colors removed since the trail had the given size back, latest first
+  void restoreColors(int mark) {
+    while (trailSize > mark) {
+      int entry = trail[--trailSize];
+      restoreValue(entry / colors.length, entry % colors.length);
+    }
+  }
+
+  //    Capacity propagator, run after a region was given the color. Once the color has reached
+  //    its capacity it is removed from every unassigned domain.
+  //    Returns false if a domain was wiped out or the counting bound fails
+  boolean propagateCapacity(int[] colorMapping, int color, boolean singleton) {
+    colorCounts[color]++;
+    if (constraints.isFull(color, colorCounts)) {
+      for (int p = 0; p < unassigned.size(); p++) {
+        if (!removeColor(colorMapping, unassigned.get(p), color, singleton)) return false;
+      }
+    }
+    return constraints.isFeasible(domains, unassigned, colorCounts, forcedCounts);
+  }
+
+  //    Fills the domains of all the regions and marks every region unassigned
+  void initDomains() {
+    if (domains == null) {
+      domains = new ReversibleSparseSet[this.nodes.length];
+      for (int i = 0; i < domains.length; i++) domains[i] = new ReversibleSparseSet(colors.length);
+      unassigned = new ReversibleSparseSet(this.nodes.length);
+    }
+    for (int i = 0; i < domains.length; i++) {
+      domains[i].fill();
+      if (constraints != null) constraints.restrictDomain(i, domains[i]);
+    }
+    unassigned.fill();
+  }
+
+  //    Prepares the counters and the budget for a new solve
+  void startSearch(SearchBudget budget) {
+    this.budget = budget;
+    budget.start();
+    Arrays.fill(colorCounts, 0);
+    trailSize = 0;
+    if (bestColorMapping == null) bestColorMapping = new int[this.nodes.length];
+    Arrays.fill(bestColorMapping, -1);
+    bestLevel = 0;
+  }
+
+  //    Keeps a copy of the current assignment if it is the deepest one reached so far
+  void recordProgress(int[] colorMapping, int level) {
+    if (level > bestLevel) {
+      bestLevel = level;
+      System.arraycopy(colorMapping, 0, bestColorMapping, 0, colorMapping.length);
+    }
+  }
+
+  //    Builds the result of a solve and resets the counters.
+  //    If the search did not succeed the best partial assignment is reported instead
+  SolveResult finishSearch(boolean solved, int[] colorMapping, int[] totalBackTrackCount) {
+    SolveStatus status =
+        solved
+            ? SolveStatus.SOLVED
+            : budget.isExhausted() ? SolveStatus.TIMEOUT : SolveStatus.UNSAT;
+    int[] assignment = solved ? colorMapping : bestColorMapping;
     Map<String, String> map = new HashMap<>();
     for (int i = 0; i < states.length; i++) {
-      map.put(states[i], colors[colorMapping[i]]);
+      if (assignment[i] != -1) map.put(states[i], colors[assignment[i]]);
     }
+    SolveResult result = new SolveResult(status, map, budget.nodes, numberOfBacktracks);
     totalBackTrackCount[0] = numberOfBacktracks;
     numberOfBacktracks = 0;
-    return map;
+    budget = SearchBudget.unlimited();
+    return result;
+  }
+
+  //    Solves the coloring problem using backtracking.
+  //    Returns the coloring if successfully assigned else null.
+  public Map<String, String> colorWithBacktracking(int[] totalBackTrackCount) {
+    return colorWithBacktracking(totalBackTrackCount, SearchBudget.unlimited())
+        .getSolvedColoring();
+  }
+
+  //    Solves the coloring problem using backtracking within the given budget
+  public SolveResult colorWithBacktracking(int[] totalBackTrackCount, SearchBudget budget) {
+    int[] colorMapping = new int[this.nodes.length];
+    Arrays.fill(colorMapping, -1);
+    int level = 0;
+    initDomains();
+    startSearch(budget);
+    boolean solved = colorWithBacktrackingUtil(colorMapping, 0, level);
+    return finishSearch(solved, colorMapping, totalBackTrackCount);
   }
 
   //    This method is a helper utility function to backtrack and assign the colors to the regions.
   //    Returns true if successfully assigned else false
-  public boolean colorWithBacktrackingUtil(
-      int[] colorMapping, Map<Integer, List<Integer>> domainMapping, int node, int level) {
+  public boolean colorWithBacktrackingUtil(int[] colorMapping, int node, int level) {
     if (level == this.nodes.length) return true;
+    if (budget.tick(numberOfBacktracks)) return false;
+    recordProgress(colorMapping, level);
     for (int i = 0; i < colors.length; i++) {
       if (isValidColor(node, colorMapping, i)) {
         colorMapping[node] = i;
-        if (colorWithBacktrackingUtil(
-            colorMapping, domainMapping, computeDegreeHeuristic(colorMapping), level + 1))
+        unassigned.remove(node);
+        colorCounts[i]++;
+        if (colorWithBacktrackingUtil(colorMapping, computeDegreeHeuristic(), level + 1))
           return true;
+        colorCounts[i]--;
+        unassigned.restore(node);
         colorMapping[node] = -1;
       }
       numberOfBacktracks++;
@@ -143,60 +405,56 @@ public class StructureWithHeuristics {
   //    Performs backtracking + FC to assign the hues to regions.
   //    Returns true if successfully assigned else false
   public Map<String, String> colorWithForwardCheck(int[] totalBackTrackCount) {
+    return colorWithForwardCheck(totalBackTrackCount, SearchBudget.unlimited())
+        .getSolvedColoring();
+  }
+
+  //    Performs backtracking + FC within the given budget
+  public SolveResult colorWithForwardCheck(int[] totalBackTrackCount, SearchBudget budget) {
     int[] colorMapping = new int[this.nodes.length];
     Arrays.fill(colorMapping, -1);
-    Map<Integer, List<Integer>> domainMapping = generateDomainMap();
-    Map<InduceEffect, Integer> removedMap = new HashMap<>();
+    initDomains();
     int level = 0;
-    if (!colorWithForwardCheckUtil(domainMapping, removedMap, colorMapping, 0, level)) return null;
-    Map<String, String> map = new HashMap<>();
-    for (int i = 0; i < states.length; i++) {
-      map.put(states[i], colors[colorMapping[i]]);
-    }
-    totalBackTrackCount[0] = numberOfBacktracks;
-    numberOfBacktracks = 0;
-    return map;
+    initValueImpact();
+    startSearch(budget);
+    boolean solved =
+        (!hasCapacities() || constraints.isFeasible(domains, unassigned, colorCounts, forcedCounts))
+            && colorWithForwardCheckUtil(colorMapping, 0, level);
+    return finishSearch(solved, colorMapping, totalBackTrackCount);
   }
 
   //    Helper utility function that does backtracking + FC
-  public boolean colorWithForwardCheckUtil(
-      Map<Integer, List<Integer>> domainMapping,
-      Map<InduceEffect, Integer> removedMap,
-      int[] colorMapping,
-      int node,
-      int level) {
+  public boolean colorWithForwardCheckUtil(int[] colorMapping, int node, int level) {
     if (level == this.nodes.length) return true;
-    for (int color : domainMapping.get(node)) {
+    if (budget.tick(numberOfBacktracks)) return false;
+    recordProgress(colorMapping, level);
+    int mark = trailSize;
+    int[] values = valueOrders[level];
+    int numberOfValues = orderValues(node, values);
+    for (int v = 0; v < numberOfValues; v++) {
+      int color = values[v];
       List<Integer> adjacentRegions = getAdjacentRegions(node);
-      colorMapping[node] = color;
+      assign(colorMapping, node, color);
       int j;
       for (j = 0; j < adjacentRegions.size(); j++) {
-        if (colorMapping[adjacentRegions.get(j)] == -1) {
-          if (removedMap.containsKey(new InduceEffect(adjacentRegions.get(j), color))) continue;
-          domainMapping.get(adjacentRegions.get(j)).remove(Integer.valueOf(color));
-          removedMap.put(new InduceEffect(adjacentRegions.get(j), color), node);
-          if (domainMapping.get(adjacentRegions.get(j)).isEmpty()) break;
+        int neighbour = adjacentRegions.get(j);
+        if (colorMapping[neighbour] != -1) continue;
+        // Only colours that were really removed go on the trail, some may never have been there
+        pruneValue(neighbour, color);
+        if (domains[neighbour].isEmpty()) {
+          recordWipeout(node, j);
+          break;
         }
       }
-      if (j == adjacentRegions.size())
-        if (colorWithForwardCheckUtil(
-            domainMapping,
-            removedMap,
-            colorMapping,
-            getNextState(domainMapping, colorMapping),
-            level + 1)) return true;
+      boolean capacityChecked = hasCapacities() && j == adjacentRegions.size();
+      if (j == adjacentRegions.size()
+          && (!capacityChecked || propagateCapacity(colorMapping, color, false)))
+        if (colorWithForwardCheckUtil(colorMapping, getNextState(colorMapping), level + 1))
+          return true;
       numberOfBacktracks++;
-      for (int neighbour : adjacentRegions) {
-        if (colorMapping[neighbour] == -1) {
-          if (removedMap.get(new InduceEffect(neighbour, color)) != null
-              && removedMap.get(new InduceEffect(neighbour, color)) == node) {
-            domainMapping.get(neighbour).add(color);
-            removedMap.remove(new InduceEffect(neighbour, color));
-            Collections.sort(domainMapping.get(neighbour));
-          }
-        }
-      }
-      colorMapping[node] = -1;
+      if (capacityChecked) colorCounts[color]--;
+      restoreColors(mark);
+      unassign(colorMapping, node);
     }
     return false;
   }
@@ -204,137 +462,85 @@ public class StructureWithHeuristics {
   //    Performs backtracking + FC + singleton to assign the colors to states
   //    Returns true if successfully assigned else false
   public Map<String, String> colorWithSingleton(int[] totalBackTrackCount) {
+    return colorWithSingleton(totalBackTrackCount, SearchBudget.unlimited()).getSolvedColoring();
+  }
+
+  //    Performs backtracking + FC + singleton within the given budget
+  public SolveResult colorWithSingleton(int[] totalBackTrackCount, SearchBudget budget) {
     int[] colorMapping = new int[this.nodes.length];
     Arrays.fill(colorMapping, -1);
     int level = 0;
-    Map<Integer, List<Integer>> domainMapping = generateDomainMap();
-    if (!colorWithSingletonUtil(domainMapping, colorMapping, new HashSet<>(), 0, level))
-      return null;
-    Map<String, String> map = new HashMap<>();
-    for (int i = 0; i < states.length; i++) {
-      map.put(states[i], colors[colorMapping[i]]);
-    }
-    totalBackTrackCount[0] = numberOfBacktracks;
-    numberOfBacktracks = 0;
-    return map;
+    initDomains();
+    initValueImpact();
+    startSearch(budget);
+    boolean solved =
+        (!hasCapacities() || constraints.isFeasible(domains, unassigned, colorCounts, forcedCounts))
+            && colorWithSingletonUtil(colorMapping, 0, level);
+    return finishSearch(solved, colorMapping, totalBackTrackCount);
   }
 
-  //    Singleton propagation
+  //    Singleton propagation: the only color left to the region is removed from its unassigned
+  //    neighbours, and the removals are recorded on the trail.
   //    Returns true if successful propagation else false
-  boolean avoidSingleton(
-      int effected,
-      Map<Integer, List<Integer>> domainMapping,
-      Set<Integer> singletonVisited,
-      int[] colorMapping) {
+  boolean avoidSingleton(int effected, int[] colorMapping) {
 
-    int singletonColor = domainMapping.get(effected).getFirst();
+    int singletonColor = domains[effected].get(0);
     List<Integer> adjacentRegions = getAdjacentRegions(effected);
-    singletonVisited.add(effected);
-    for (int neighbour : adjacentRegions) {
-      if (colorMapping[neighbour] != -1
-          && domainMapping.get(neighbour).size() == 1
-          && singletonColor == domainMapping.get(neighbour).getFirst()) return false;
-      if (!singletonVisited.contains(neighbour) && colorMapping[neighbour] == -1) {
-        domainMapping.get(neighbour).remove(Integer.valueOf(singletonColor));
-        if (domainMapping.get(neighbour).size() == 1)
-          avoidSingleton(neighbour, domainMapping, singletonVisited, colorMapping);
+    for (int k = 0; k < adjacentRegions.size(); k++) {
+      int neighbour = adjacentRegions.get(k);
+      if (colorMapping[neighbour] == singletonColor
+          || (colorMapping[neighbour] == -1
+              && !removeColor(colorMapping, neighbour, singletonColor, true))) {
+        // The innermost failure of the cascade is kept
+        if (failedRegion == -1) {
+          failedRegion = effected;
+          failedIndex = k;
+        }
+        return false;
       }
     }
     return true;
   }
 
-  //    This method undo the singleton propagation performed
-  void undoSingleton(
-      int effected,
-      Map<Integer, List<Integer>> domainMapping,
-      Set<Integer> singletonVisited,
-      int[] colorMapping) {
-
-    int singletonColor = domainMapping.get(effected).getFirst();
-    List<Integer> adjacentRegions = getAdjacentRegions(effected);
-    singletonVisited.remove(effected);
-    for (int neighbour : adjacentRegions) {
-      if (colorMapping[neighbour] == -1 && singletonVisited.contains(neighbour)) {
-        undoSingleton(neighbour, domainMapping, singletonVisited, colorMapping);
-        domainMapping.get(neighbour).add(singletonColor);
-      }
-    }
-  }
-
   //    Utility function which does the backtracking + FC + Singleton
   //    Returns true if successful else false
-  public boolean colorWithSingletonUtil(
-      Map<Integer, List<Integer>> domainMapping,
-      int[] colorMapping,
-      Set<Integer> singletonVisited,
-      int node,
-      int level) {
+  public boolean colorWithSingletonUtil(int[] colorMapping, int node, int level) {
     if (level == this.nodes.length) return true;
-    try {
-      for (int color : domainMapping.get(node)) {
-        List<Integer> adjacentRegions = getAdjacentRegions(node);
-        colorMapping[node] = color;
-        int j;
-        for (j = 0; j < adjacentRegions.size(); j++) {
-          int neighbour = adjacentRegions.get(j);
-          if (colorMapping[neighbour] == -1) {
-            if (domainMapping.get(neighbour).size() == 1
-                && domainMapping.get(neighbour).getFirst() == color) break;
-            domainMapping.get(neighbour).remove(Integer.valueOf(color));
-            if (domainMapping.get(neighbour).size() == 1
-                && !avoidSingleton(neighbour, domainMapping, singletonVisited, colorMapping)) break;
-          }
-        }
-        if (j == adjacentRegions.size()) {
-          if (colorWithSingletonUtil(
-              domainMapping,
-              colorMapping,
-              singletonVisited,
-              getNextState(domainMapping, colorMapping),
-              level + 1)) {
-            return true;
+    if (budget.tick(numberOfBacktracks)) return false;
+    recordProgress(colorMapping, level);
+    int mark = trailSize;
+    int[] values = valueOrders[level];
+    int numberOfValues = orderValues(node, values);
+    for (int v = 0; v < numberOfValues; v++) {
+      int color = values[v];
+      List<Integer> adjacentRegions = getAdjacentRegions(node);
+      assign(colorMapping, node, color);
+      int j;
+      for (j = 0; j < adjacentRegions.size(); j++) {
+        int neighbour = adjacentRegions.get(j);
+        failedRegion = -1;
+        if (colorMapping[neighbour] == -1
+            && !removeColor(colorMapping, neighbour, color, true)) {
+          if (failedRegion == -1) {
+            recordWipeout(node, j);
+          } else {
+            recordWipeout(failedRegion, failedIndex);
           }
+          break;
         }
-        numberOfBacktracks++;
-        for (int neighbour : adjacentRegions) {
-          if (colorMapping[neighbour] == -1) {
-            if (domainMapping.get(neighbour).size() == 1)
-              undoSingleton(neighbour, domainMapping, singletonVisited, colorMapping);
-            domainMapping.get(neighbour).add(color);
-            Collections.sort(domainMapping.get(neighbour));
-          }
+      }
+      boolean capacityChecked = hasCapacities() && j == adjacentRegions.size();
+      if (j == adjacentRegions.size()
+          && (!capacityChecked || propagateCapacity(colorMapping, color, true))) {
+        if (colorWithSingletonUtil(colorMapping, getNextState(colorMapping), level + 1)) {
+          return true;
         }
-        colorMapping[node] = -1;
       }
-    } catch (Exception e) {
-      System.out.println(e.getMessage());
+      numberOfBacktracks++;
+      if (capacityChecked) colorCounts[color]--;
+      restoreColors(mark);
+      unassign(colorMapping, node);
     }
     return false;
   }
-
-  static class InduceEffect {
-
-    Integer effectedNode;
-    int removedDomain;
-
-    public InduceEffect(Integer effectedNode, int removedDomain) {
-      this.effectedNode = effectedNode;
-      this.removedDomain = removedDomain;
-    }
-
-    @Override
-    public int hashCode() {
-      return effectedNode.hashCode() + removedDomain;
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-      if (obj instanceof StructureWithoutHeuristics.InduceEffect pp) {
-        return (pp.effectedNode.equals(this.effectedNode)
-            && pp.removedDomain == this.removedDomain);
-      } else {
-        return false;
-      }
-    }
-  }
 }
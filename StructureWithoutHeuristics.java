@@ -2,60 +2,147 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+//  Search context for the static-order searches: the map comes from a shared ProblemModel, the
+//  fields below it are the state of the solve in progress
 public class StructureWithoutHeuristics {
+  ProblemModel model;
   int[][] nodes;
   String[] colors;
   String[] states;
   int numberOfBacktracks;
+  SearchBudget budget = SearchBudget.unlimited();
+  int[] bestColorMap; // Deepest consistent partial assignment seen by the current solve
+  int bestDepth;
+  SideConstraints constraints; // Fixed, forbidden and capacity-limited colours, null if none
+  int[] colorCounts; // Assigned states of each colour, for the capacities
+  int[] forcedCounts; // Scratch for the counting bound of the capacities
+  //  Colours taken out of the domains, packed as state * colours + colour, latest last. A search
+  //  level undoes its removals by restoring down to the size it started with
+  int[] trail;
+  int trailSize;
 
   public StructureWithoutHeuristics(int[][] nodes, String[] colors, String[] states) {
-    this.nodes = nodes;
-    this.colors = colors;
-    this.states = states;
+    this(new ProblemModel(nodes, colors, states));
+  }
+
+  //  Context for a model shared with other solves, see ProblemModel.acquireWithoutHeuristics
+  public StructureWithoutHeuristics(ProblemModel model) {
+    this.model = model;
+    this.nodes = model.nodes;
+    this.colors = model.colors;
+    this.states = model.states;
+    this.colorCounts = new int[colors.length];
+    this.forcedCounts = new int[colors.length];
+    this.trail = new int[nodes.length * colors.length];
+  }
+
+  //  Fixes the colours of some states before the search. Side constraints set before are copied
+  //  first, so the caller's constraints are left as they are
+  public void fixColors(int[] fixedColors) {
+    constraints =
+        constraints == null
+            ? new SideConstraints(nodes.length, colors.length)
+            : constraints.copy();
+    constraints.fixColors(fixedColors);
+  }
+
+  //  Fixes the colours of a clique's states, unless the side constraints tell colours apart, in
+  //  which case the arbitrary colours could exclude every solution. Returns true if they were fixed
+  public boolean fixCliqueColors(int[] cliqueColors) {
+    if (constraints != null && !constraints.isColorSymmetric()) return false;
+    fixColors(cliqueColors);
+    return true;
+  }
+
+  //  Adds fixed, forbidden and capacity-limited colours to the search. The constraints are only
+  //  read, so several contexts may share them
+  public void setSideConstraints(SideConstraints constraints) {
+    this.constraints = constraints;
   }
 
   //  Checks if color is valid or not
   public boolean isValidColor(int node, int[] colorMap, int colorIndex) {
-    for (int i = 0; i < nodes.length; i++) {
-      if (nodes[node][i] == 1 && colorMap[i] == colorIndex) return false;
+    if (constraints != null
+        && (!constraints.allows(node, colorIndex) || constraints.isFull(colorIndex, colorCounts)))
+      return false;
+    for (int neighbour : model.adjacency[node]) {
+      if (colorMap[neighbour] == colorIndex) return false;
     }
     return true;
   }
 
-  //  Generates the domain for all the states and returns the map.
-  public Map<Integer, List<Integer>> generateDomainMap() {
-    Map<Integer, List<Integer>> domainmap = new HashMap<>();
+  //  Generates the domain for all the states and returns the map, indexed by state so a lookup
+  //  does not box the state
+  public List<List<Integer>> generateDomainMap() {
+    List<List<Integer>> domainmap = new ArrayList<>(this.nodes.length);
     for (int i = 0; i < this.nodes.length; i++) {
       List<Integer> list =
           IntStream.rangeClosed(0, colors.length - 1).boxed().collect(Collectors.toList());
-      domainmap.put(i, list);
+      if (constraints != null) constraints.restrictDomain(i, list);
+      domainmap.add(list);
     }
 
     return domainmap;
   }
 
-  //  Solves the coloring problem using backtracking
-  public Map<String, String> backtrackColoring(int[] totalBackTrackCount) {
-    int[] colorMap = new int[this.nodes.length];
-    Arrays.fill(colorMap, -1);
+  //  Prepares the counters and the budget for a new solve
+  void startSearch(SearchBudget budget) {
+    this.budget = budget;
+    budget.start();
+    Arrays.fill(colorCounts, 0);
+    trailSize = 0;
+    if (bestColorMap == null) bestColorMap = new int[this.nodes.length];
+    Arrays.fill(bestColorMap, -1);
+    bestDepth = 0;
+  }
+
+  //  Keeps a copy of the current assignment if it is the deepest one reached so far
+  void recordProgress(int[] colorMap, int depth) {
+    if (depth > bestDepth) {
+      bestDepth = depth;
+      System.arraycopy(colorMap, 0, bestColorMap, 0, colorMap.length);
+    }
+  }
 
-    if (!backtrackColoringUtil(colorMap, 0)) return null;
+  //  Builds the result of a solve and resets the counters.
+  //  If the search did not succeed the best partial assignment is reported instead
+  SolveResult finishSearch(boolean solved, int[] colorMap, int[] totalBackTrackCount) {
+    SolveStatus status =
+        solved
+            ? SolveStatus.SOLVED
+            : budget.isExhausted() ? SolveStatus.TIMEOUT : SolveStatus.UNSAT;
+    int[] assignment = solved ? colorMap : bestColorMap;
 
     Map<String, String> map = new HashMap<>();
     for (int i = 0; i < states.length; i++) {
-      map.put(states[i], colors[colorMap[i]]);
+      if (assignment[i] != -1) map.put(states[i], colors[assignment[i]]);
     }
 
+    SolveResult result = new SolveResult(status, map, budget.nodes, numberOfBacktracks);
     totalBackTrackCount[0] = numberOfBacktracks;
     numberOfBacktracks = 0;
-    return map;
+    budget = SearchBudget.unlimited();
+    return result;
+  }
+
+  //  Solves the coloring problem using backtracking
+  public Map<String, String> backtrackColoring(int[] totalBackTrackCount) {
+    return backtrackColoring(totalBackTrackCount, SearchBudget.unlimited()).getSolvedColoring();
+  }
+
+  //  Solves the coloring problem using backtracking within the given budget
+  public SolveResult backtrackColoring(int[] totalBackTrackCount, SearchBudget budget) {
+    int[] colorMap = new int[this.nodes.length];
+    Arrays.fill(colorMap, -1);
+
+    startSearch(budget);
+    boolean solved = backtrackColoringUtil(colorMap, 0);
+    return finishSearch(solved, colorMap, totalBackTrackCount);
   }
 
   //  Helper utility function to backtrack and assign the colors to the states
@@ -63,10 +150,14 @@ public class StructureWithoutHeuristics {
 
   public boolean backtrackColoringUtil(int[] colorMap, int node) {
     if (node == this.nodes.length) return true;
+    if (budget.tick(numberOfBacktracks)) return false;
+    recordProgress(colorMap, node);
     for (int i = 0; i < colors.length; i++) {
       if (isValidColor(node, colorMap, i)) {
         colorMap[node] = i;
+        colorCounts[i]++;
         if (backtrackColoringUtil(colorMap, node + 1)) return true;
+        colorCounts[i]--;
         colorMap[node] = -1;
       }
       numberOfBacktracks++;
@@ -74,38 +165,85 @@ public class StructureWithoutHeuristics {
     return false;
   }
 
-  //  Returns the list of neighbors
+  //  Returns the list of neighbors, read only
   List<Integer> getNeighbors(int node) {
-    List<Integer> list = new ArrayList<>();
-    for (int i = 0; i < this.nodes[node].length; i++) {
-      if (nodes[node][i] == 1) list.add(i);
+    return model.neighbourLists.get(node);
+  }
+
+  //  Returns true if the side constraints put a limit on some colour
+  boolean hasCapacities() {
+    return constraints != null && constraints.hasCapacities;
+  }
+
+  //  Removes the colour from the domain of an unassigned state and records it on the trail.
+  //  Returns false if the colour was not in the domain
+  boolean pruneValue(List<List<Integer>> domainMap, int state, int color) {
+    if (!domainMap.get(state).remove(Integer.valueOf(color))) return false;
+    trail[trailSize++] = state * colors.length + color;
+    return true;
+  }
+
+  //  Removes the colour from the domain of an unassigned state and records it on the trail.
+  //  With singleton propagation a state that is left with one colour passes it on to its
+  //  neighbours. Returns false if a domain was wiped out
+  boolean removeColor(
+      List<List<Integer>> domainMap, int[] colorMap, int state, int color, boolean singleton) {
+    if (!pruneValue(domainMap, state, color)) return true;
+    List<Integer> domain = domainMap.get(state);
+    if (domain.isEmpty()) return false;
+    return !singleton || domain.size() > 1 || avoidSingleton(state, domainMap, colorMap);
+  }
+
+  //  Puts the colours removed since the trail had the given size back, latest first
+  void restoreColors(List<List<Integer>> domainMap, int mark) {
+    while (trailSize > mark) {
+      int entry = trail[--trailSize];
+      List<Integer> domain = domainMap.get(entry / colors.length);
+      domain.add(entry % colors.length);
+      Collections.sort(domain);
+    }
+  }
+
+  //  Capacity propagator, run after a state was given the colour. Once the colour has reached
+  //  its capacity it is removed from every unassigned domain.
+  //  Returns false if a domain was wiped out or the counting bound fails
+  boolean propagateCapacity(
+      List<List<Integer>> domainMap, int[] colorMap, int color, boolean singleton) {
+    colorCounts[color]++;
+    if (constraints.isFull(color, colorCounts)) {
+      for (int i = 0; i < this.nodes.length; i++) {
+        if (colorMap[i] == -1 && !removeColor(domainMap, colorMap, i, color, singleton))
+          return false;
+      }
     }
-    return list;
+    return constraints.isFeasible(domainMap, colorMap, colorCounts, forcedCounts);
   }
 
   //  Performs backtracking + FC to assign the colors to states
   public Map<String, String> forwardCheckingColoring(int[] totalBackTrackCount) {
+    return forwardCheckingColoring(totalBackTrackCount, SearchBudget.unlimited())
+        .getSolvedColoring();
+  }
+
+  //  Performs backtracking + FC within the given budget
+  public SolveResult forwardCheckingColoring(int[] totalBackTrackCount, SearchBudget budget) {
     int[] colorMap = new int[this.nodes.length];
     Arrays.fill(colorMap, -1);
-    Map<Integer, List<Integer>> domainMap = generateDomainMap();
-    Map<InduceEffect, Integer> removedMap = new HashMap<>();
-    if (!forwardCheckingColoringUtil(domainMap, removedMap, colorMap, 0)) return null;
-    Map<String, String> map = new HashMap<>();
-    for (int i = 0; i < states.length; i++) {
-      map.put(states[i], colors[colorMap[i]]);
-    }
-    totalBackTrackCount[0] = numberOfBacktracks;
-    numberOfBacktracks = 0;
-    return map;
+    List<List<Integer>> domainMap = generateDomainMap();
+    startSearch(budget);
+    boolean solved =
+        (!hasCapacities() || constraints.isFeasible(domainMap, colorMap, colorCounts, forcedCounts))
+            && forwardCheckingColoringUtil(domainMap, colorMap, 0);
+    return finishSearch(solved, colorMap, totalBackTrackCount);
   }
 
   //  Helper utility function that does backtracking + FC
   public boolean forwardCheckingColoringUtil(
-      Map<Integer, List<Integer>> domainMap,
-      Map<InduceEffect, Integer> removedMap,
-      int[] colorMap,
-      int node) {
+      List<List<Integer>> domainMap, int[] colorMap, int node) {
     if (node == this.nodes.length) return true;
+    if (budget.tick(numberOfBacktracks)) return false;
+    recordProgress(colorMap, node);
+    int mark = trailSize;
 
     for (int color : domainMap.get(node)) {
       List<Integer> neighbors = getNeighbors(node);
@@ -113,29 +251,22 @@ public class StructureWithoutHeuristics {
       int j;
 
       for (j = 0; j < neighbors.size(); j++) {
-        if (colorMap[neighbors.get(j)] == -1) {
-          if (removedMap.containsKey(new InduceEffect(neighbors.get(j), color))) continue;
-          domainMap.get(neighbors.get(j)).remove(Integer.valueOf(color));
-          removedMap.put(new InduceEffect(neighbors.get(j), color), node);
-          if (domainMap.get(neighbors.get(j)).isEmpty()) break;
+        int neighbour = neighbors.get(j);
+        if (colorMap[neighbour] == -1) {
+          // Only colours that were really removed go on the trail, some may never have been there
+          pruneValue(domainMap, neighbour, color);
+          if (domainMap.get(neighbour).isEmpty()) break;
         }
       }
 
-      if (j == neighbors.size())
-        if (forwardCheckingColoringUtil(domainMap, removedMap, colorMap, node + 1)) return true;
+      boolean capacityChecked = hasCapacities() && j == neighbors.size();
+      if (j == neighbors.size()
+          && (!capacityChecked || propagateCapacity(domainMap, colorMap, color, false)))
+        if (forwardCheckingColoringUtil(domainMap, colorMap, node + 1)) return true;
 
       numberOfBacktracks++;
-
-      for (int neighbour : neighbors) {
-        if (colorMap[neighbour] == -1) {
-          if (removedMap.get(new InduceEffect(neighbour, color)) != null
-              && removedMap.get(new InduceEffect(neighbour, color)) == node) {
-            domainMap.get(neighbour).add(color);
-            removedMap.remove(new InduceEffect(neighbour, color));
-            Collections.sort(domainMap.get(neighbour));
-          }
-        }
-      }
+      if (capacityChecked) colorCounts[color]--;
+      restoreColors(domainMap, mark);
 
       colorMap[node] = -1;
     }
@@ -146,146 +277,76 @@ public class StructureWithoutHeuristics {
   //  This method performs backtracking + FC + singleton to assign the colors to states
   //  returns true if successfully assigned else false
   public Map<String, String> forwardCheckingSingletonColoring(int[] totalBackTrackCount) {
+    return forwardCheckingSingletonColoring(totalBackTrackCount, SearchBudget.unlimited())
+        .getSolvedColoring();
+  }
+
+  //  Performs backtracking + FC + singleton within the given budget
+  public SolveResult forwardCheckingSingletonColoring(
+      int[] totalBackTrackCount, SearchBudget budget) {
     int[] colorMap = new int[this.nodes.length];
     Arrays.fill(colorMap, -1);
 
-    Map<Integer, List<Integer>> domainMap = generateDomainMap();
-    if (!forwardCheckingSingletonColoringUtil(domainMap, colorMap, new HashSet<>(), 0)) return null;
-
-    Map<String, String> map = new HashMap<>();
-    for (int i = 0; i < states.length; i++) {
-      map.put(states[i], colors[colorMap[i]]);
-    }
-
-    totalBackTrackCount[0] = numberOfBacktracks;
-    numberOfBacktracks = 0;
-    return map;
+    List<List<Integer>> domainMap = generateDomainMap();
+    startSearch(budget);
+    boolean solved =
+        (!hasCapacities() || constraints.isFeasible(domainMap, colorMap, colorCounts, forcedCounts))
+            && forwardCheckingSingletonColoringUtil(domainMap, colorMap, 0);
+    return finishSearch(solved, colorMap, totalBackTrackCount);
   }
 
-  //  This method does the singleton propagation
+  //  This method does the singleton propagation: the only colour left to the state is removed
+  //  from its unassigned neighbours, and the removals are recorded on the trail.
   //  Returns true if successful propagation else false
-  boolean avoidSingleton(
-      int effected,
-      Map<Integer, List<Integer>> domainMap,
-      Set<Integer> singletonVisited,
-      int[] colorMap) {
+  boolean avoidSingleton(int effected, List<List<Integer>> domainMap, int[] colorMap) {
 
     int singletonColor = domainMap.get(effected).getFirst();
     List<Integer> neighbors = getNeighbors(effected);
 
-    singletonVisited.add(effected);
-
     for (int neighbour : neighbors) {
-      if (colorMap[neighbour] != -1
-          && domainMap.get(neighbour).size() == 1
-          && singletonColor == domainMap.get(neighbour).getFirst()) return false;
-
-      if (!singletonVisited.contains(neighbour) && colorMap[neighbour] == -1) {
-        domainMap.get(neighbour).remove(Integer.valueOf(singletonColor));
-        if (domainMap.get(neighbour).size() == 1)
-          avoidSingleton(neighbour, domainMap, singletonVisited, colorMap);
-      }
+      if (colorMap[neighbour] == singletonColor) return false;
+      if (colorMap[neighbour] == -1
+          && !removeColor(domainMap, colorMap, neighbour, singletonColor, true))
+        return false;
     }
     return true;
   }
 
-  //  Undoes the singleton propagation performed on singleton state
-  void undoSingleton(
-      int effected,
-      Map<Integer, List<Integer>> domainMap,
-      Set<Integer> singletonVisited,
-      int[] colorMap) {
-
-    int singletonColor = domainMap.get(effected).getFirst();
-    List<Integer> neighbors = getNeighbors(effected);
-
-    singletonVisited.remove(effected);
-
-    for (int neighbour : neighbors) {
-      if (colorMap[neighbour] == -1 && singletonVisited.contains(neighbour)) {
-        undoSingleton(neighbour, domainMap, singletonVisited, colorMap);
-        domainMap.get(neighbour).add(singletonColor);
-      }
-    }
-  }
-
   //  This method is a helper utility function which does the backtracking + FC + Singleton.
   //  Returns true if successful else false
   public boolean forwardCheckingSingletonColoringUtil(
-      Map<Integer, List<Integer>> domainMap,
-      int[] colorMap,
-      Set<Integer> singletonVisited,
-      int node) {
+      List<List<Integer>> domainMap, int[] colorMap, int node) {
 
     if (node == this.nodes.length) return true;
+    if (budget.tick(numberOfBacktracks)) return false;
+    recordProgress(colorMap, node);
+    int mark = trailSize;
 
-    try {
-
-      for (int color : domainMap.get(node)) {
-        List<Integer> neighbors = getNeighbors(node);
-        colorMap[node] = color;
-        int j;
-
-        for (j = 0; j < neighbors.size(); j++) {
-          int neighbour = neighbors.get(j);
-          if (colorMap[neighbour] == -1) {
-            if (domainMap.get(neighbour).size() == 1
-                && domainMap.get(neighbour).getFirst() == color) break;
-            domainMap.get(neighbour).remove(Integer.valueOf(color));
-            if (domainMap.get(neighbour).size() == 1
-                && !avoidSingleton(neighbour, domainMap, singletonVisited, colorMap)) break;
-          }
-        }
-
-        if (j == neighbors.size()) {
-          if (forwardCheckingSingletonColoringUtil(
-              domainMap, colorMap, singletonVisited, node + 1)) {
-            return true;
-          }
-        }
+    for (int color : domainMap.get(node)) {
+      List<Integer> neighbors = getNeighbors(node);
+      colorMap[node] = color;
+      int j;
 
-        numberOfBacktracks++;
+      for (j = 0; j < neighbors.size(); j++) {
+        int neighbour = neighbors.get(j);
+        if (colorMap[neighbour] == -1
+            && !removeColor(domainMap, colorMap, neighbour, color, true)) break;
+      }
 
-        for (int neighbour : neighbors) {
-          if (colorMap[neighbour] == -1) {
-            if (domainMap.get(neighbour).size() == 1)
-              undoSingleton(neighbour, domainMap, singletonVisited, colorMap);
-            domainMap.get(neighbour).add(color);
-            Collections.sort(domainMap.get(neighbour));
-          }
+      boolean capacityChecked = hasCapacities() && j == neighbors.size();
+      if (j == neighbors.size()
+          && (!capacityChecked || propagateCapacity(domainMap, colorMap, color, true))) {
+        if (forwardCheckingSingletonColoringUtil(domainMap, colorMap, node + 1)) {
+          return true;
         }
-
-        colorMap[node] = -1;
       }
-    } catch (Exception e) {
-      System.out.println(e.getMessage());
-    }
-    return false;
-  }
-
-  static class InduceEffect {
-
-    Integer effectedNode;
-    int removedDomain;
-
-    public InduceEffect(Integer effectedNode, int removedDomain) {
-      this.effectedNode = effectedNode;
-      this.removedDomain = removedDomain;
-    }
 
-    @Override
-    public int hashCode() {
-      return effectedNode.hashCode() + removedDomain;
-    }
+      numberOfBacktracks++;
+      if (capacityChecked) colorCounts[color]--;
+      restoreColors(domainMap, mark);
 
-    @Override
-    public boolean equals(Object obj) {
-      if (obj instanceof StructureWithoutHeuristics.InduceEffect pp) {
-        return (pp.effectedNode.equals(this.effectedNode)
-            && pp.removedDomain == this.removedDomain);
-      } else {
-        return false;
-      }
+      colorMap[node] = -1;
     }
+    return false;
   }
 }
@@ -0,0 +1,106 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//  A piece of the search tree handed between the distributed coordinator and its workers:
+//  a partial assignment plus the forward-checked domains of all states.
+//  Domains are int bitsets, bit c is set when colour c is still possible, so at most 31 colours.
+public class Subproblem {
+  int[] assignment; // Colour of each state, -1 if unassigned
+  int[] domains;
+
+  public Subproblem(int[] assignment, int[] domains) {
+    this.assignment = assignment;
+    this.domains = domains;
+  }
+
+  //  The root of the search: nothing assigned, every colour possible
+  //  except for states with a fixed colour (fixedColors may be null)
+  static Subproblem root(int numberOfStates, int numberOfColors, int[] fixedColors) {
+    int[] assignment = new int[numberOfStates];
+    int[] domains = new int[numberOfStates];
+    Arrays.fill(assignment, -1);
+    for (int i = 0; i < numberOfStates; i++) {
+      domains[i] =
+          fixedColors != null && fixedColors[i] != -1
+              ? 1 << fixedColors[i]
+              : (1 << numberOfColors) - 1;
+    }
+    return new Subproblem(assignment, domains);
+  }
+
+  int assignedCount() {
+    int count = 0;
+    for (int color : assignment) {
+      if (color != -1) count++;
+    }
+    return count;
+  }
+
+  //  Unassigned state with the smallest domain, -1 if every state is assigned
+  static int pickVariable(int[] assignment, int[] domains) {
+    int best = -1;
+    int bestSize = Integer.MAX_VALUE;
+    for (int i = 0; i < assignment.length; i++) {
+      if (assignment[i] == -1 && Integer.bitCount(domains[i]) < bestSize) {
+        bestSize = Integer.bitCount(domains[i]);
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  //  Assigns the colour and removes it from the unassigned neighbours, in place.
+  //  Returns false if a neighbour's domain is wiped out
+  static boolean forwardCheck(
+      int[][] adjacency, int[] assignment, int[] domains, int state, int color) {
+    assignment[state] = color;
+    domains[state] = 1 << color;
+    for (int neighbour : adjacency[state]) {
+      if (assignment[neighbour] == -1) {
+        domains[neighbour] &= ~(1 << color);
+        if (domains[neighbour] == 0) return false;
+      }
+    }
+    return true;
+  }
+
+  //  Returns the child subproblem for one colour of a state, null if forward checking fails
+  Subproblem child(int[][] adjacency, int state, int color) {
+    int[] childAssignment = assignment.clone();
+    int[] childDomains = domains.clone();
+    if (!forwardCheck(adjacency, childAssignment, childDomains, state, color)) return null;
+    return new Subproblem(childAssignment, childDomains);
+  }
+
+  //  Branches on the state with the smallest domain.
+  //  Returns the consistent children, or an empty list if this subproblem is already complete
+  List<Subproblem> split(int[][] adjacency) {
+    List<Subproblem> children = new ArrayList<>();
+    int state = pickVariable(assignment, domains);
+    if (state == -1) return children;
+    for (int bits = domains[state]; bits != 0; bits &= bits - 1) {
+      Subproblem child = child(adjacency, state, Integer.numberOfTrailingZeros(bits));
+      if (child != null) children.add(child);
+    }
+    return children;
+  }
+
+  void write(DataOutputStream out) throws IOException {
+    out.writeInt(assignment.length);
+    for (int color : assignment) out.writeByte(color);
+    for (int domain : domains) out.writeInt(domain);
+  }
+
+  static Subproblem read(DataInputStream in) throws IOException {
+    int n = in.readInt();
+    int[] assignment = new int[n];
+    int[] domains = new int[n];
+    for (int i = 0; i < n; i++) assignment[i] = in.readByte();
+    for (int i = 0; i < n; i++) domains[i] = in.readInt();
+    return new Subproblem(assignment, domains);
+  }
+}
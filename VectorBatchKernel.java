@@ -0,0 +1,189 @@
+import java.util.Arrays;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+//  Vector kernel of BatchedSolver: the same forward checking as BatchedSolver.solveScalar, with
+//  one instance per lane. Every step each lane either tries its next colour or backtracks. Lanes
+//  run at different depths, so neighbour masks and the per-depth stacks are gathered and
+//  scattered by lane. A lane whose instance is finished is refilled with the next one.
+//  Lane state lives in int arrays between steps and the per-colour domains are never held in a
+//  vector array, so that C2 keeps every vector in registers.
+//  Needs --add-modules jdk.incubator.vector at compile and run time.
+class VectorBatchKernel {
+  static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+  static final IntVector LANE_IDS = IntVector.zero(SPECIES).addIndex(1);
+  static final IntVector ONE = IntVector.broadcast(SPECIES, 1);
+
+  BatchedSolver batch;
+  int lanes = SPECIES.length();
+  int k;
+  int next; // Next instance to load into a lane
+
+  // Lane registers, loaded and stored every step
+  int[] laneInstance; // -1 when the lane is empty
+  int[] laneDepth;
+  int[] laneRemaining; // Colours not tried yet for the current state
+  int[] laneState;
+  int[] laneUnassigned;
+  int[][] laneCand; // laneCand[c]: states that can still take colour c
+  int[][] laneTried; // laneCand if the colour being tried is kept
+  // Stacks, entry depth * lanes + lane
+  int[][] stackCand;
+  int[] stackRemaining;
+  int[] stackState;
+  int[] stackUnassigned;
+  int[] index;
+
+  VectorBatchKernel(BatchedSolver batch) {
+    this.batch = batch;
+    this.k = batch.numberOfColors;
+    int stackSize = BatchedSolver.MAX_STATES * lanes;
+    laneInstance = new int[lanes];
+    laneDepth = new int[lanes];
+    laneRemaining = new int[lanes];
+    laneState = new int[lanes];
+    laneUnassigned = new int[lanes];
+    laneCand = new int[k][lanes];
+    laneTried = new int[k][lanes];
+    stackCand = new int[k][stackSize];
+    stackRemaining = new int[stackSize];
+    stackState = new int[stackSize];
+    stackUnassigned = new int[stackSize];
+    index = new int[lanes];
+    Arrays.fill(laneInstance, -1);
+  }
+
+  static void solve(BatchedSolver batch) {
+    VectorBatchKernel kernel = new VectorBatchKernel(batch);
+    while (kernel.refill()) kernel.step();
+  }
+
+  //  Loads new instances into empty lanes. Returns false once every lane is empty
+  boolean refill() {
+    boolean anyActive = false;
+    for (int lane = 0; lane < lanes; lane++) {
+      while (laneInstance[lane] == -1 && next < batch.size) {
+        int instance = next++;
+        int unassigned = BatchedSolver.fullMask(batch.numberOfStates[instance]);
+        if (unassigned == 0) {
+          batch.statuses[instance] = SolveStatus.SOLVED;
+          continue;
+        }
+        laneInstance[lane] = instance;
+        laneDepth[lane] = 0;
+        laneState[lane] = 0;
+        laneRemaining[lane] = BatchedSolver.fullMask(k);
+        laneUnassigned[lane] = unassigned;
+        stackState[lane] = 0;
+        stackUnassigned[lane] = unassigned;
+        for (int c = 0; c < k; c++) {
+          laneCand[c][lane] = unassigned;
+          stackCand[c][lane] = unassigned;
+        }
+      }
+      anyActive |= laneInstance[lane] != -1;
+    }
+    return anyActive;
+  }
+
+  void step() {
+    IntVector instance = IntVector.fromArray(SPECIES, laneInstance, 0);
+    IntVector remaining = IntVector.fromArray(SPECIES, laneRemaining, 0);
+    VectorMask<Integer> active = instance.compare(VectorOperators.GE, 0);
+    VectorMask<Integer> attempt = active.andNot(remaining.eq(0));
+    VectorMask<Integer> backtrack = active.and(remaining.eq(0));
+
+    long solved = attempt.anyTrue() ? tryColors(instance, remaining, attempt) : 0;
+    long unsat = backtrack.anyTrue() ? backtrack(backtrack) : 0;
+
+    // Finished lanes are refilled before the next step
+    for (long bits = solved | unsat; bits != 0; bits &= bits - 1) {
+      int lane = Long.numberOfTrailingZeros(bits);
+      batch.statuses[laneInstance[lane]] =
+          (solved & (1L << lane)) != 0 ? SolveStatus.SOLVED : SolveStatus.UNSAT;
+      laneInstance[lane] = -1;
+    }
+  }
+
+  //  Tries the lowest remaining colour of the current state in the attempting lanes.
+  //  Lanes where it is consistent keep it and descend. Returns the lanes that are solved
+  long tryColors(IntVector instance, IntVector remaining, VectorMask<Integer> attempt) {
+    IntVector depth = IntVector.fromArray(SPECIES, laneDepth, 0);
+    IntVector state = IntVector.fromArray(SPECIES, laneState, 0);
+    IntVector unassigned = IntVector.fromArray(SPECIES, laneUnassigned, 0);
+
+    IntVector bit = remaining.and(remaining.neg());
+    IntVector color = bit.lanewise(VectorOperators.TRAILING_ZEROS_COUNT);
+    instance.max(0).mul(BatchedSolver.MAX_STATES).add(state).intoArray(index, 0);
+    IntVector neighbours =
+        IntVector.fromArray(SPECIES, batch.neighbourMasks, 0, index, 0, attempt).not();
+    IntVector nextUnassigned = unassigned.and(ONE.lanewise(VectorOperators.LSHL, state).not());
+    IntVector covered = IntVector.zero(SPECIES);
+    for (int c = 0; c < k; c++) {
+      IntVector cand = IntVector.fromArray(SPECIES, laneCand[c], 0);
+      IntVector tried = cand.blend(cand.and(neighbours), attempt.and(color.eq(c)));
+      tried.intoArray(laneTried[c], 0);
+      covered = covered.or(tried);
+    }
+    VectorMask<Integer> consistent =
+        attempt.and(covered.and(nextUnassigned).compare(VectorOperators.EQ, nextUnassigned));
+    batch.nodeCount += attempt.trueCount();
+    batch.numberOfBacktracks += attempt.andNot(consistent).trueCount();
+    color.intoArray(batch.solutions, 0, index, 0, consistent);
+
+    // The colour is used up either way. Consistent lanes save the remaining colours of this
+    // depth and enter the next state, unless that completed the instance
+    remaining = remaining.and(bit.not());
+    VectorMask<Integer> done = nextUnassigned.eq(0);
+    VectorMask<Integer> descend = consistent.andNot(done);
+    depth.mul(lanes).add(LANE_IDS).intoArray(index, 0);
+    remaining.intoArray(stackRemaining, 0, index, 0, descend);
+    depth = depth.blend(depth.add(1), descend);
+    state = state.blend(nextUnassigned.lanewise(VectorOperators.TRAILING_ZEROS_COUNT), descend);
+    unassigned = unassigned.blend(nextUnassigned, consistent);
+    depth.mul(lanes).add(LANE_IDS).intoArray(index, 0);
+    state.intoArray(stackState, 0, index, 0, descend);
+    unassigned.intoArray(stackUnassigned, 0, index, 0, descend);
+    IntVector domain = IntVector.zero(SPECIES);
+    for (int c = 0; c < k; c++) {
+      IntVector cand =
+          IntVector.fromArray(SPECIES, laneCand[c], 0)
+              .blend(IntVector.fromArray(SPECIES, laneTried[c], 0), consistent);
+      cand.intoArray(laneCand[c], 0);
+      cand.intoArray(stackCand[c], 0, index, 0, descend);
+      IntVector allowed = cand.lanewise(VectorOperators.LSHR, state).and(1);
+      domain = domain.or(allowed.lanewise(VectorOperators.LSHL, c));
+    }
+
+    depth.intoArray(laneDepth, 0, attempt);
+    remaining.blend(domain, descend).intoArray(laneRemaining, 0, attempt);
+    state.intoArray(laneState, 0, attempt);
+    unassigned.intoArray(laneUnassigned, 0, attempt);
+    return consistent.and(done).toLong();
+  }
+
+  //  Returns the backtracking lanes to their previous depth.
+  //  Returns the lanes that backtracked past the root, those instances have no colouring
+  long backtrack(VectorMask<Integer> backtrack) {
+    batch.numberOfBacktracks += backtrack.trueCount();
+    IntVector previous = IntVector.fromArray(SPECIES, laneDepth, 0).sub(1);
+    VectorMask<Integer> root = previous.compare(VectorOperators.LT, 0);
+    VectorMask<Integer> restore = backtrack.andNot(root);
+
+    previous.max(0).mul(lanes).add(LANE_IDS).intoArray(index, 0);
+    previous.intoArray(laneDepth, 0, restore);
+    IntVector.fromArray(SPECIES, stackRemaining, 0, index, 0, restore)
+        .intoArray(laneRemaining, 0, restore);
+    IntVector.fromArray(SPECIES, stackState, 0, index, 0, restore)
+        .intoArray(laneState, 0, restore);
+    IntVector.fromArray(SPECIES, stackUnassigned, 0, index, 0, restore)
+        .intoArray(laneUnassigned, 0, restore);
+    for (int c = 0; c < k; c++) {
+      IntVector.fromArray(SPECIES, stackCand[c], 0, index, 0, restore)
+          .intoArray(laneCand[c], 0, restore);
+    }
+    return backtrack.and(root).toLong();
+  }
+}